@@ -1,6 +1,7 @@
 package data.media;
 
 import java.util.HashMap;
+import java.util.Map;
 
 public final class FieldMapping
 {
@@ -93,4 +94,42 @@ public final class FieldMapping
 		fullFieldToIndex.put(FULL_FIELD_NAME_POD, FIELD_IX_POD);
 
 	}
+
+	/*
+	 * Perfect hash over the full names: first character and length are enough to tell
+	 * them apart, so a lookup is two char reads, one array load and one equals(),
+	 * with no boxing. Jackson hands out interned names, so equals() usually stops at
+	 * the identity check.
+	 */
+	private final static int FIELD_HASH_MASK = 63;
+	private final static String[] hashedFieldNames = new String[FIELD_HASH_MASK + 1];
+	private final static int[] hashedFieldIndexes = new int[FIELD_HASH_MASK + 1];
+	static {
+		for (Map.Entry<String,Integer> entry : fullFieldToIndex.entrySet()) {
+			int slot = fieldHash(entry.getKey());
+			if (hashedFieldNames[slot] != null) {
+				throw new IllegalStateException("Fields '" + hashedFieldNames[slot] + "' and '"
+						+ entry.getKey() + "' have the same hash");
+			}
+			hashedFieldNames[slot] = entry.getKey();
+			hashedFieldIndexes[slot] = entry.getValue();
+		}
+	}
+
+	private static int fieldHash(String name)
+	{
+		return (name.charAt(0) * 3 + name.length()) & FIELD_HASH_MASK;
+	}
+
+	/**
+	 * Same as <code>fullFieldToIndex.get(name)</code>, but returns 0 for an unknown name.
+	 */
+	public static int fieldIndex(String name)
+	{
+		if (name.length() == 0) {
+			return 0;
+		}
+		int slot = fieldHash(name);
+		return name.equals(hashedFieldNames[slot]) ? hashedFieldIndexes[slot] : 0;
+	}
 }
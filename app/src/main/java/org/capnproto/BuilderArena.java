@@ -41,17 +41,62 @@ public final class BuilderArena implements Arena {
     public int nextSize;
     public final AllocationStrategy allocationStrategy;
 
+    private final int firstSegmentSizeWords;
+    private final SegmentPool pool; // null: segments are plain allocations
+
 
     public BuilderArena(int firstSegmentSizeWords, AllocationStrategy allocationStrategy) {
+        this(firstSegmentSizeWords, allocationStrategy, null);
+    }
+
+    public BuilderArena(int firstSegmentSizeWords, AllocationStrategy allocationStrategy,
+                        SegmentPool pool) {
         this.segments = new ArrayList<SegmentBuilder>();
         this.nextSize = firstSegmentSizeWords;
         this.allocationStrategy = allocationStrategy;
-        SegmentBuilder segment0 = new SegmentBuilder(
-            ByteBuffer.allocate(firstSegmentSizeWords * Constants.BYTES_PER_WORD), this);
+        this.firstSegmentSizeWords = firstSegmentSizeWords;
+        this.pool = pool;
+        SegmentBuilder segment0 = new SegmentBuilder(newBuffer(firstSegmentSizeWords), this);
         segment0.buffer.order(ByteOrder.LITTLE_ENDIAN);
         this.segments.add(segment0);
     }
 
+    private ByteBuffer newBuffer(int words) {
+        if (this.pool != null) {
+            return this.pool.acquire(words);
+        }
+        return ByteBuffer.allocate(words * Constants.BYTES_PER_WORD);
+    }
+
+    /**
+     * Empties the arena for the next message: segment 0 is zeroed and kept,
+     * any further segments go back to the pool (or are dropped without one).
+     */
+    public final void reset() {
+        for (int ii = this.segments.size() - 1; ii > 0; --ii) {
+            SegmentBuilder segment = this.segments.remove(ii);
+            if (this.pool != null) {
+                this.pool.release(segment.buffer, segment.currentSize());
+            }
+        }
+        SegmentBuilder segment0 = this.segments.get(0);
+        SegmentPool.zero(segment0.buffer, segment0.currentSize() * Constants.BYTES_PER_WORD);
+        segment0.pos = 0;
+        this.nextSize = this.firstSegmentSizeWords;
+    }
+
+    /**
+     * Hands all segments back to the pool. The arena can't be used afterwards.
+     */
+    public final void release() {
+        if (this.pool != null) {
+            for (SegmentBuilder segment : this.segments) {
+                this.pool.release(segment.buffer, segment.currentSize());
+            }
+        }
+        this.segments.clear();
+    }
+
     public final SegmentReader tryGetSegment(int id) {
         return this.segments.get(id);
     }
@@ -61,34 +106,40 @@ public final class BuilderArena implements Arena {
 
     public final void checkReadLimit(int numBytes) { }
 
-    public static class AllocateResult {
-        public final SegmentBuilder segment;
+    /*
+     * Where allocate() put the words, packed into a long so that no result object is
+     * created per allocation: the segment id in the high half, the word offset in the low.
+     */
+    static long allocation(int segmentId, int offset) {
+        return ((long) segmentId << 32) | (offset & 0xffffffffL);
+    }
 
-        // offset to the beginning the of allocated memory
-        public final int offset;
+    static int allocationSegmentId(long allocation) {
+        return (int) (allocation >>> 32);
+    }
 
-        public AllocateResult(SegmentBuilder segment, int offset) {
-            this.segment = segment;
-            this.offset = offset;
-        }
+    static int allocationOffset(long allocation) {
+        return (int) allocation;
     }
 
-    public AllocateResult allocate(int amount) {
+    /*
+     * Allocates `amount` words in the last segment, or in a new one if they don't fit.
+     * Returns the result packed as by allocation().
+     */
+    public long allocate(int amount) {
 
         int len = this.segments.size();
         // we allocate the first segment in the constructor.
 
         int result = this.segments.get(len - 1).allocate(amount);
         if (result != SegmentBuilder.FAILED_ALLOCATION) {
-            return new AllocateResult(this.segments.get(len - 1), result);
+            return allocation(len - 1, result);
         }
 
         // allocate_owned_memory
 
         int size = Math.max(amount, this.nextSize);
-        SegmentBuilder newSegment = new SegmentBuilder(
-            ByteBuffer.allocate(size * Constants.BYTES_PER_WORD),
-            this);
+        SegmentBuilder newSegment = new SegmentBuilder(newBuffer(size), this);
 
         switch (this.allocationStrategy) {
         case GROW_HEURISTICALLY:
@@ -104,7 +155,7 @@ public final class BuilderArena implements Arena {
         newSegment.id = len;
         this.segments.add(newSegment);
 
-        return new AllocateResult(newSegment, newSegment.allocate(amount));
+        return allocation(len, newSegment.allocate(amount));
     }
 
     public final ByteBuffer[] getSegmentsForOutput() {
@@ -95,12 +95,24 @@ public final class Data {
         }
 
         public byte[] toArray() {
-            ByteBuffer dup = this.buffer.duplicate();
             byte result[] = new byte[this.size];
-            dup.position(this.offset);
-            dup.get(result, 0, this.size);
+            getAll(result, 0);
             return result;
         }
+
+        /**
+         * Copies all <code>size()</code> bytes into <code>dst</code> from <code>offset</code> on.
+         */
+        public void getAll(byte[] dst, int offset) {
+            if (this.buffer.hasArray()) {
+                System.arraycopy(this.buffer.array(), this.buffer.arrayOffset() + this.offset,
+                                 dst, offset, this.size);
+            } else {
+                ByteBuffer dup = this.buffer.duplicate();
+                dup.position(this.offset);
+                dup.get(dst, offset, this.size);
+            }
+        }
     }
 
     public static final class Builder {
@@ -50,6 +50,21 @@ public class ListBuilder {
         return this.elementCount;
     }
 
+    /**
+     * The elements of a list of <code>elementBits</code>-wide primitives as a little-endian
+     * slice of the segment, or null if the list is empty or its elements are further apart,
+     * as when a struct list is read as a primitive list.
+     */
+    protected final java.nio.ByteBuffer _getElementBytes(int elementBits) {
+        if (this.elementCount == 0 || this.step != elementBits) {
+            return null;
+        }
+        java.nio.ByteBuffer bytes = this.segment.buffer.duplicate();
+        bytes.limit(this.ptr + (int)((long)this.elementCount * elementBits / Constants.BITS_PER_BYTE));
+        bytes.position(this.ptr);
+        return bytes.slice().order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    }
+
     protected boolean _getBooleanElement(int index) {
         long bindex = (long)index * this.step;
         byte b = this.segment.buffer.get(this.ptr + (int)(bindex / Constants.BITS_PER_BYTE));
@@ -144,4 +159,11 @@ public class ListBuilder {
                                   value);
     }
 
+    protected final void _setTextElement(int index, String value) {
+        WireHelpers.setTextPointer(
+            (this.ptr + (int)((long)index * this.step / Constants.BITS_PER_BYTE)) / Constants.BYTES_PER_WORD,
+            this.segment,
+            value);
+    }
+
 }
@@ -66,6 +66,21 @@ public class ListReader {
         return this.elementCount;
     }
 
+    /**
+     * The elements of a list of <code>elementBits</code>-wide primitives as a little-endian
+     * slice of the segment, or null if the list is empty or its elements are further apart,
+     * as when a struct list is read as a primitive list.
+     */
+    protected final java.nio.ByteBuffer _getElementBytes(int elementBits) {
+        if (this.elementCount == 0 || this.step != elementBits) {
+            return null;
+        }
+        java.nio.ByteBuffer bytes = this.segment.buffer.duplicate();
+        bytes.limit(this.ptr + (int)((long)this.elementCount * elementBits / Constants.BITS_PER_BYTE));
+        bytes.position(this.ptr);
+        return bytes.slice().order(java.nio.ByteOrder.LITTLE_ENDIAN);
+    }
+
     protected boolean _getBooleanElement(int index) {
         long bindex = (long)index * this.step;
         byte b = this.segment.buffer.get(this.ptr + (int)(bindex / Constants.BITS_PER_BYTE));
@@ -107,6 +122,19 @@ public class ListReader {
                                        this.structPointerCount, this.nestingLimit - 1);
     }
 
+    protected <T> T _getStructElement(StructReader.Factory<T> factory, int index, T reuse) {
+        if (reuse == null) {
+            return _getStructElement(factory, index);
+        }
+        long indexBit = (long)index * this.step;
+        int structData = this.ptr + (int)(indexBit / Constants.BITS_PER_BYTE);
+        int structPointers = structData + (this.structDataSize / Constants.BITS_PER_BYTE);
+
+        ((StructReader)reuse).moveTo(this.segment, structData, structPointers / 8, this.structDataSize,
+                                     this.structPointerCount, this.nestingLimit - 1);
+        return reuse;
+    }
+
     protected <T> T _getPointerElement(FromPointerReader<T> factory, int index) {
         return factory.fromPointerReader(this.segment,
                                          (this.ptr + (int)((long)index * this.step / Constants.BITS_PER_BYTE)) / Constants.BYTES_PER_WORD,
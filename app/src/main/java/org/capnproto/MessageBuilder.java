@@ -40,6 +40,28 @@ public final class MessageBuilder {
                                       allocationStrategy);
     }
 
+    public MessageBuilder(int firstSegmentWords, BuilderArena.AllocationStrategy allocationStrategy,
+                          SegmentPool pool) {
+        this.arena = new BuilderArena(firstSegmentWords,
+                                      allocationStrategy, pool);
+    }
+
+    /**
+     * Discards the message so the builder can be used for the next one. Readers
+     * and builders obtained from the old message must no longer be used.
+     */
+    public final void reset() {
+        this.arena.reset();
+    }
+
+    /**
+     * Returns the segments to the pool given to the constructor. Unlike
+     * {@link #reset()}, the builder can't be used afterwards.
+     */
+    public final void release() {
+        this.arena.release();
+    }
+
     private AnyPointer.Builder getRootInternal() {
         SegmentBuilder rootSegment = this.arena.segments.get(0);
         if (rootSegment.currentSize() == 0) {
@@ -28,8 +28,9 @@ public final class MessageReader {
     final int nestingLimit;
 
     public MessageReader(ByteBuffer[] segmentSlices, ReaderOptions options) {
-        this.nestingLimit = options.nestingLimit;
-        this.arena = new ReaderArena(segmentSlices, options.traversalLimitInWords);
+        // trusted: the nesting checks in WireHelpers can never fire
+        this.nestingLimit = options.trusted ? Integer.MAX_VALUE : options.nestingLimit;
+        this.arena = new ReaderArena(segmentSlices, options.traversalLimitInWords, options.trusted);
     }
 
     public <T> T getRoot(FromPointerReader<T> factory) {
@@ -0,0 +1,245 @@
+// Copyright (c) 2013-2014 Sandstorm Development Group, Inc. and contributors
+// Licensed under the MIT License:
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package org.capnproto;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/*
+ * Reads a sequence of messages framed as by `Serialize.write`, back to back, from one
+ * channel or stream. The header and segment size buffers are kept between messages and
+ * segments are read into one growable buffer, so a long stream costs no more buffers
+ * than its largest message.
+ *
+ * By default every message is read over the previous one: a MessageReader, and anything
+ * got from it, is only valid until the next message is read. With `retainMessages`,
+ * segments are appended to chunks of at least CHUNK_BYTES instead, and messages stay
+ * valid for as long as they are referenced.
+ *
+ * Packed input can be read by passing a PackedInputStream; the count of messages must then
+ * be known, as the end of a packed stream cannot be told apart from a truncated one.
+ */
+public final class MessageStreamReader implements Iterable<MessageReader> {
+    static final int CHUNK_BYTES = 64 * 1024;
+
+    private final ReadableByteChannel channel; // null when reading from `stream`
+    private final InputStream stream;
+    private final ReaderOptions options;
+    private final boolean retainMessages;
+
+    private final ByteBuffer firstWord = Serialize.makeByteBuffer(Constants.BYTES_PER_WORD);
+    private ByteBuffer moreSizesRaw = Serialize.makeByteBuffer(0);
+    private int[] segmentSizes = new int[4]; // in words
+    private ByteBuffer segments;
+
+    public MessageStreamReader(ReadableByteChannel channel) {
+        this(channel, ReaderOptions.DEFAULT_READER_OPTIONS, false);
+    }
+
+    public MessageStreamReader(ReadableByteChannel channel, ReaderOptions options, boolean retainMessages) {
+        this.channel = channel;
+        this.stream = null;
+        this.options = options;
+        this.retainMessages = retainMessages;
+    }
+
+    public MessageStreamReader(InputStream stream) {
+        this(stream, ReaderOptions.DEFAULT_READER_OPTIONS, false);
+    }
+
+    public MessageStreamReader(InputStream stream, ReaderOptions options, boolean retainMessages) {
+        this.channel = null;
+        this.stream = stream;
+        this.options = options;
+        this.retainMessages = retainMessages;
+    }
+
+    /*
+     * Returns the next message, or null if the input ends before it starts.
+     */
+    public MessageReader next() throws IOException {
+        this.firstWord.clear();
+        if (!fill(this.firstWord, true)) {
+            return null;
+        }
+
+        int segmentCount = 1 + this.firstWord.getInt(0);
+        if (segmentCount < 1 || segmentCount > 512) {
+            throw new IOException("too many segments");
+        }
+        if (this.segmentSizes.length < segmentCount) {
+            this.segmentSizes = new int[Math.max(segmentCount, 2 * this.segmentSizes.length)];
+        }
+
+        this.segmentSizes[0] = this.firstWord.getInt(4);
+        long totalWords = this.segmentSizes[0] & 0xffffffffL;
+
+        if (segmentCount > 1) {
+            int moreSizesBytes = 4 * (segmentCount & ~1);
+            if (this.moreSizesRaw.capacity() < moreSizesBytes) {
+                this.moreSizesRaw = Serialize.makeByteBuffer(4 * 512);
+            }
+            this.moreSizesRaw.clear();
+            this.moreSizesRaw.limit(moreSizesBytes);
+            fill(this.moreSizesRaw, false);
+            for (int ii = 1; ii < segmentCount; ++ii) {
+                this.segmentSizes[ii] = this.moreSizesRaw.getInt((ii - 1) * 4);
+                totalWords += this.segmentSizes[ii] & 0xffffffffL;
+            }
+        }
+
+        if (totalWords > this.options.traversalLimitInWords
+            || totalWords > Integer.MAX_VALUE / Constants.BYTES_PER_WORD) {
+            throw new DecodeException("Message size exceeds traversal limit.");
+        }
+
+        int base = reserve((int) totalWords * Constants.BYTES_PER_WORD);
+        fill(this.segments, false);
+
+        ByteBuffer[] segmentSlices = new ByteBuffer[segmentCount];
+        ByteBuffer dup = this.segments.duplicate();
+        int offset = base;
+        for (int ii = 0; ii < segmentCount; ++ii) {
+            int bytes = this.segmentSizes[ii] * Constants.BYTES_PER_WORD;
+            dup.limit(offset + bytes);
+            dup.position(offset);
+            segmentSlices[ii] = dup.slice();
+            segmentSlices[ii].order(ByteOrder.LITTLE_ENDIAN);
+            offset += bytes;
+        }
+        this.segments.limit(this.segments.capacity());
+
+        return new MessageReader(segmentSlices, this.options);
+    }
+
+    /*
+     * Makes room for `bytes` more in `segments`, positioned at the start of that room
+     * and limited to its end. Returns the position.
+     */
+    private int reserve(int bytes) {
+        if (this.retainMessages) {
+            if (this.segments == null || this.segments.remaining() < bytes) {
+                this.segments = Serialize.makeByteBuffer(Math.max(bytes, CHUNK_BYTES));
+            }
+        } else {
+            if (this.segments == null || this.segments.capacity() < bytes) {
+                int capacity = this.segments == null ? 0 : 2 * this.segments.capacity();
+                this.segments = Serialize.makeByteBuffer(Math.max(bytes, capacity));
+            }
+            this.segments.clear();
+        }
+        int base = this.segments.position();
+        this.segments.limit(base + bytes);
+        return base;
+    }
+
+    /*
+     * Fills `buffer` from the input. Returns false if the input ended before the first
+     * byte and `endAllowed` is set; ending anywhere else is an error.
+     */
+    private boolean fill(ByteBuffer buffer, boolean endAllowed) throws IOException {
+        int start = buffer.position();
+        while (buffer.hasRemaining()) {
+            int r;
+            if (this.channel != null) {
+                r = this.channel.read(buffer);
+            } else {
+                r = this.stream.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                if (r > 0) {
+                    buffer.position(buffer.position() + r);
+                }
+            }
+            if (r < 0) {
+                if (endAllowed && buffer.position() == start) {
+                    return false;
+                }
+                throw new IOException("premature EOF");
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Iterates over the rest of the input. Without `retainMessages`, looking for the next
+     * message invalidates the previous one.
+     */
+    public Iterator<MessageReader> iterator() {
+        return new Iterator<MessageReader>() {
+            private MessageReader next;
+            private boolean ended;
+
+            public boolean hasNext() {
+                if (this.next == null && !this.ended) {
+                    try {
+                        this.next = MessageStreamReader.this.next();
+                    } catch (IOException e) {
+                        throw new DecodeException(e.getMessage());
+                    }
+                    this.ended = this.next == null;
+                }
+                return this.next != null;
+            }
+
+            public MessageReader next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                MessageReader result = this.next;
+                this.next = null;
+                return result;
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /*
+     * Iterates over the roots of the rest of the messages.
+     */
+    public <T> Iterable<T> roots(final FromPointerReader<T> factory) {
+        return new Iterable<T>() {
+            public Iterator<T> iterator() {
+                final Iterator<MessageReader> messages = MessageStreamReader.this.iterator();
+                return new Iterator<T>() {
+                    public boolean hasNext() {
+                        return messages.hasNext();
+                    }
+
+                    public T next() {
+                        return messages.next().getRoot(factory);
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+                };
+            }
+        };
+    }
+}
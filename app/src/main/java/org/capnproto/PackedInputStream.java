@@ -24,6 +24,7 @@ package org.capnproto;
 import java.io.IOException;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public final class PackedInputStream implements ReadableByteChannel {
     final BufferedInputStream inner;
@@ -41,14 +42,14 @@ public final class PackedInputStream implements ReadableByteChannel {
             throw new Error("PackedInputStream reads must be word-aligned");
         }
 
-        int outPtr = outBuf.position();
-        int outEnd = outPtr + len;
+        // words are assembled little-endian, as they are laid out on the wire
+        boolean littleEndian = outBuf.order() == ByteOrder.LITTLE_ENDIAN;
 
         ByteBuffer inBuf = this.inner.getReadBuffer();
 
         while (true) {
 
-            byte tag = 0;
+            int tag;
 
             if (inBuf.remaining() < 10) {
                 if (outBuf.remaining() == 0) {
@@ -56,19 +57,19 @@ public final class PackedInputStream implements ReadableByteChannel {
                 }
 
                 if (inBuf.remaining() == 0) {
-                    inBuf = this.inner.getReadBuffer();
+                    inBuf = nextReadBuffer();
                     continue;
                 }
 
                 //# We have at least 1, but not 10, bytes available. We need to read
                 //# slowly, doing a bounds check on each byte.
 
-                tag = inBuf.get();
+                tag = inBuf.get() & 0xff;
 
                 for (int i = 0; i < 8; ++i) {
                     if ((tag & (1 << i)) != 0) {
                         if (inBuf.remaining() == 0) {
-                            inBuf = this.inner.getReadBuffer();
+                            inBuf = nextReadBuffer();
                         }
                         outBuf.put(inBuf.get());
                     } else {
@@ -76,17 +77,17 @@ public final class PackedInputStream implements ReadableByteChannel {
                     }
                 }
 
-                if (inBuf.remaining() == 0 && (tag == 0 || tag == (byte)0xff)) {
-                    inBuf = this.inner.getReadBuffer();
+                if (inBuf.remaining() == 0 && (tag == 0 || tag == 0xff)) {
+                    inBuf = nextReadBuffer();
                 }
             } else {
 
-                tag = inBuf.get();
-                for (int n = 0; n < 8; ++n) {
-                    boolean isNonzero = (tag & (1 << n)) != 0;
-                    outBuf.put((byte)(inBuf.get() & (isNonzero ? -1 : 0)));
-                    inBuf.position(inBuf.position() + (isNonzero ? 0 : -1));
+                tag = inBuf.get() & 0xff;
+                long word = 0;
+                for (int bits = tag; bits != 0; bits &= bits - 1) {
+                    word |= (inBuf.get() & 0xffL) << (Integer.numberOfTrailingZeros(bits) << 3);
                 }
+                outBuf.putLong(littleEndian ? word : Long.reverseBytes(word));
             }
 
             if (tag == 0) {
@@ -96,14 +97,14 @@ public final class PackedInputStream implements ReadableByteChannel {
 
                 int runLength = (0xff & (int)inBuf.get()) * 8;
 
-                if (runLength > outEnd - outPtr) {
+                if (runLength > outBuf.remaining()) {
                     throw new Error("Packed input did not end cleanly on a segment boundary");
                 }
 
-                for (int i = 0; i < runLength; ++i) {
-                    outBuf.put((byte) 0);
+                for (int i = 0; i < runLength; i += 8) {
+                    outBuf.putLong(0L);
                 }
-            } else if (tag == (byte)0xff) {
+            } else if (tag == 0xff) {
 
                 int runLength = (0xff & (int)inBuf.get()) * 8;
 
@@ -139,6 +140,14 @@ public final class PackedInputStream implements ReadableByteChannel {
         }
     }
 
+    private ByteBuffer nextReadBuffer() throws IOException {
+        ByteBuffer buf = this.inner.getReadBuffer();
+        if (buf.remaining() == 0) {
+            throw new DecodeException("Premature end of packed input.");
+        }
+        return buf;
+    }
+
     public void close() throws IOException {
         inner.close();
     }
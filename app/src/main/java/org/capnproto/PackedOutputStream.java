@@ -24,19 +24,37 @@ package org.capnproto;
 import java.io.IOException;
 import java.nio.channels.WritableByteChannel;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 public final class PackedOutputStream implements WritableByteChannel {
     final BufferedOutputStream inner;
 
+    // takes the output of one word when the real buffer has less than 10 bytes left
+    private final ByteBuffer slowBuffer = ByteBuffer.allocate(20);
+
     public PackedOutputStream(BufferedOutputStream output) {
         this.inner = output;
     }
 
+    /*
+     * One bit per non-zero byte of `word`, lowest byte first: the packed tag.
+     */
+    static int tag(long word) {
+        // high bit of each byte set iff the byte is non-zero; no carries between bytes
+        long nonZero = (((word & 0x7f7f7f7f7f7f7f7fL) + 0x7f7f7f7f7f7f7f7fL) | word) & 0x8080808080808080L;
+        // gather the eight high bits into the top byte
+        return (int) (((nonZero >>> 7) * 0x0102040810204080L) >>> 56);
+    }
+
     public int write(ByteBuffer inBuf) throws IOException {
         int length = inBuf.remaining();
+        // words are read as little-endian, as they are laid out on the wire
+        ByteBuffer in = inBuf.order() == ByteOrder.LITTLE_ENDIAN
+            ? inBuf : inBuf.duplicate().order(ByteOrder.LITTLE_ENDIAN);
         ByteBuffer out = this.inner.getWriteBuffer();
 
-        ByteBuffer slowBuffer = ByteBuffer.allocate(20);
+        ByteBuffer slowBuffer = this.slowBuffer;
+        slowBuffer.clear();
 
         int inPtr = inBuf.position();
         int inEnd = inPtr + length;
@@ -58,63 +76,18 @@ public final class PackedOutputStream implements WritableByteChannel {
                 out.rewind();
             }
 
-            int tagPos = out.position();
-            out.position(tagPos + 1);
-
-            byte curByte;
-
-            curByte = inBuf.get(inPtr);
-            byte bit0 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit0 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit1 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit1 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit2 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit2 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit3 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit3 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit4 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit4 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit5 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit5 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit6 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit6 - 1);
-            inPtr += 1;
-
-            curByte = inBuf.get(inPtr);
-            byte bit7 = (curByte != 0) ? (byte)1 : (byte)0;
-            out.put(curByte);
-            out.position(out.position() + bit7 - 1);
-            inPtr += 1;
-
-            byte tag = (byte)((bit0 << 0) | (bit1 << 1) | (bit2 << 2) | (bit3 << 3) |
-                              (bit4 << 4) | (bit5 << 5) | (bit6 << 6) | (bit7 << 7));
-
-            out.put(tagPos, tag);
+            long word = in.getLong(inPtr);
+            inPtr += 8;
+
+            int tag = tag(word);
+            out.put((byte)tag);
+            if (tag == 0xff && out.order() == ByteOrder.LITTLE_ENDIAN) {
+                out.putLong(word);
+            } else {
+                for (int bits = tag; bits != 0; bits &= bits - 1) {
+                    out.put((byte)(word >>> (Integer.numberOfTrailingZeros(bits) << 3)));
+                }
+            }
 
             if (tag == 0) {
                 //# An all-zero word is followed by a count of
@@ -125,12 +98,12 @@ public final class PackedOutputStream implements WritableByteChannel {
                 if (limit - inPtr > 255 * 8) {
                     limit = inPtr + 255 * 8;
                 }
-                while(inPtr < limit && inBuf.getLong(inPtr) == 0){
+                while (inPtr < limit && in.getLong(inPtr) == 0) {
                     inPtr += 8;
                 }
-                out.put((byte)((inPtr - runStart)/8));
+                out.put((byte)((inPtr - runStart) / 8));
 
-            } else if (tag == (byte)0xff) {
+            } else if (tag == 0xff) {
                 //# An all-nonzero word is followed by a count of
                 //# consecutive uncompressed words, followed by the
                 //# uncompressed words themselves.
@@ -145,30 +118,19 @@ public final class PackedOutputStream implements WritableByteChannel {
                 if (limit - inPtr > 255 * 8) {
                     limit = inPtr + 255 * 8;
                 }
-
-                while (inPtr < limit) {
-                    byte c = 0;
-                    for (int ii = 0; ii < 8; ++ii) {
-                        c += (inBuf.get(inPtr) == 0 ? 1 : 0);
-                        inPtr += 1;
-                    }
-                    if (c >= 2) {
-                        //# Un-read the word with multiple zeros, since
-                        //# we'll want to compress that one.
-                        inPtr -= 8;
-                        break;
-                    }
+                while (inPtr < limit && Integer.bitCount(tag(in.getLong(inPtr))) >= 7) {
+                    inPtr += 8;
                 }
 
                 int count = inPtr - runStart;
                 out.put((byte)(count / 8));
 
+                ByteBuffer run = inBuf.duplicate();
+                run.limit(inPtr);
+                run.position(runStart);
                 if (count <= out.remaining()) {
                     //# There's enough space to memcpy.
-                    inBuf.position(runStart);
-                    ByteBuffer slice = inBuf.slice();
-                    slice.limit(count);
-                    out.put(slice);
+                    out.put(run);
                 } else {
                     //# Input overruns the output buffer. We'll give it
                     //# to the output stream in one chunk and let it
@@ -182,11 +144,8 @@ public final class PackedOutputStream implements WritableByteChannel {
                         out.limit(oldLimit);
                     }
 
-                    inBuf.position(runStart);
-                    ByteBuffer slice = inBuf.slice();
-                    slice.limit(count);
-                    while(slice.hasRemaining()) {
-                        this.inner.write(slice);
+                    while (run.hasRemaining()) {
+                        this.inner.write(run);
                     }
 
                     out = this.inner.getWriteBuffer();
@@ -150,6 +150,20 @@ public class PrimitiveList {
             public byte get(int index) {
                 return _getByteElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(byte[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(8);
+                if (bytes != null) {
+                    bytes.get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -166,6 +180,20 @@ public class PrimitiveList {
             public void set(int index, byte value) {
                 _setByteElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(byte[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(8);
+                if (bytes != null) {
+                    bytes.put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
 
     }
@@ -203,6 +231,20 @@ public class PrimitiveList {
             public short get(int index) {
                 return _getShortElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(short[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(16);
+                if (bytes != null) {
+                    bytes.asShortBuffer().get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -219,6 +261,20 @@ public class PrimitiveList {
             public void set(int index, short value) {
                 _setShortElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(short[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(16);
+                if (bytes != null) {
+                    bytes.asShortBuffer().put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
 
     }
@@ -256,6 +312,20 @@ public class PrimitiveList {
             public int get(int index) {
                 return _getIntElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(int[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(32);
+                if (bytes != null) {
+                    bytes.asIntBuffer().get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -272,6 +342,20 @@ public class PrimitiveList {
             public void set(int index, int value) {
                 _setIntElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(int[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(32);
+                if (bytes != null) {
+                    bytes.asIntBuffer().put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
     }
 
@@ -307,6 +391,20 @@ public class PrimitiveList {
             public float get(int index) {
                 return _getFloatElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(float[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(32);
+                if (bytes != null) {
+                    bytes.asFloatBuffer().get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -323,6 +421,20 @@ public class PrimitiveList {
             public void set(int index, float value) {
                 _setFloatElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(float[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(32);
+                if (bytes != null) {
+                    bytes.asFloatBuffer().put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
     }
 
@@ -359,6 +471,20 @@ public class PrimitiveList {
             public long get(int index) {
                 return _getLongElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(long[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(64);
+                if (bytes != null) {
+                    bytes.asLongBuffer().get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -375,6 +501,20 @@ public class PrimitiveList {
             public void set(int index, long value) {
                 _setLongElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(long[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(64);
+                if (bytes != null) {
+                    bytes.asLongBuffer().put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
     }
 
@@ -410,6 +550,20 @@ public class PrimitiveList {
             public double get(int index) {
                 return _getDoubleElement(index);
             }
+
+            /**
+             * Copies all <code>size()</code> elements into <code>dst</code> from <code>offset</code> on.
+             */
+            public void getAll(double[] dst, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(64);
+                if (bytes != null) {
+                    bytes.asDoubleBuffer().get(dst, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    dst[offset + i] = get(i);
+                }
+            }
         }
 
         public static final class Builder extends ListBuilder {
@@ -426,6 +580,20 @@ public class PrimitiveList {
             public void set(int index, double value) {
                 _setDoubleElement(index, value);
             }
+
+            /**
+             * Sets all <code>size()</code> elements from <code>src</code>, starting at <code>offset</code>.
+             */
+            public void setAll(double[] src, int offset) {
+                java.nio.ByteBuffer bytes = _getElementBytes(64);
+                if (bytes != null) {
+                    bytes.asDoubleBuffer().put(src, offset, this.elementCount);
+                    return;
+                }
+                for (int i = 0; i < this.elementCount; ++i) {
+                    set(i, src[offset + i]);
+                }
+            }
         }
     }
 }
@@ -31,8 +31,16 @@ public final class ReaderArena implements Arena {
 
     public final ArrayList<SegmentReader> segments;
 
+    // no read limit accounting at all, see ReaderOptions
+    private final boolean trusted;
+
     public ReaderArena(ByteBuffer[] segmentSlices, long traversalLimitInWords) {
+        this(segmentSlices, traversalLimitInWords, false);
+    }
+
+    public ReaderArena(ByteBuffer[] segmentSlices, long traversalLimitInWords, boolean trusted) {
         this.limit = traversalLimitInWords;
+        this.trusted = trusted;
         this.segments = new ArrayList<SegmentReader>();
         for(int ii = 0; ii < segmentSlices.length; ++ii) {
             this.segments.add(new SegmentReader(segmentSlices[ii], this));
@@ -44,6 +52,9 @@ public final class ReaderArena implements Arena {
     }
 
     public final void checkReadLimit(int numBytes) {
+        if (this.trusted) {
+            return;
+        }
         if (numBytes > limit) {
             throw new DecodeException("Read limit exceeded.");
         } else {
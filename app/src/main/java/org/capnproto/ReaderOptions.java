@@ -24,10 +24,21 @@ package org.capnproto;
 public final class ReaderOptions {
     public final long traversalLimitInWords;
     public final int nestingLimit;
+    public final boolean trusted;
 
     public ReaderOptions(long traversalLimitInWords, int nestingLimit) {
+        this(traversalLimitInWords, nestingLimit, false);
+    }
+
+    /**
+     * @param trusted skip traversal-limit accounting and nesting-limit checks, for
+     *   messages written by our own processes. Reads are still bounds-checked by the
+     *   segment buffers, but nothing stops a message whose pointers amplify or loop.
+     */
+    public ReaderOptions(long traversalLimitInWords, int nestingLimit, boolean trusted) {
         this.traversalLimitInWords = traversalLimitInWords;
         this.nestingLimit = nestingLimit;
+        this.trusted = trusted;
     }
 
     final static long DEFAULT_TRAVERSAL_LIMIT_IN_WORDS = 8 * 1024 * 1024;
@@ -36,4 +47,7 @@ public final class ReaderOptions {
     public static final ReaderOptions DEFAULT_READER_OPTIONS =
         new ReaderOptions(DEFAULT_TRAVERSAL_LIMIT_IN_WORDS, DEFAULT_NESTING_LIMIT);
 
+    public static final ReaderOptions TRUSTED_READER_OPTIONS =
+        new ReaderOptions(DEFAULT_TRAVERSAL_LIMIT_IN_WORDS, DEFAULT_NESTING_LIMIT, true);
+
 }
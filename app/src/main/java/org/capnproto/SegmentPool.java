@@ -0,0 +1,83 @@
+// Copyright (c) 2013-2014 Sandstorm Development Group, Inc. and contributors
+// Licensed under the MIT License:
+//
+// Permission is hereby granted, free of charge, to any person obtaining a copy
+// of this software and associated documentation files (the "Software"), to deal
+// in the Software without restriction, including without limitation the rights
+// to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+// copies of the Software, and to permit persons to whom the Software is
+// furnished to do so, subject to the following conditions:
+//
+// The above copyright notice and this permission notice shall be included in
+// all copies or substantial portions of the Software.
+//
+// THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+// IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+// FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+// AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+// LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+// OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
+// THE SOFTWARE.
+
+package org.capnproto;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+
+/**
+ * Free list of segment buffers for {@link BuilderArena}s that build one message
+ * after another, so that each message does not allocate (and later collect) its
+ * own segments. Buffers are zeroed when released, since builders rely on fresh
+ * segments being all zero.
+ *
+ * Not thread-safe; keep one pool per thread.
+ */
+public final class SegmentPool {
+
+    public static final int DEFAULT_MAX_RETAINED = 16;
+
+    private final ArrayList<ByteBuffer> free = new ArrayList<ByteBuffer>();
+    private final int maxRetained;
+
+    public SegmentPool() {
+        this(DEFAULT_MAX_RETAINED);
+    }
+
+    public SegmentPool(int maxRetained) {
+        this.maxRetained = maxRetained;
+    }
+
+    /**
+     * Returns a zeroed, little-endian buffer of at least `words` words.
+     */
+    public ByteBuffer acquire(int words) {
+        int bytes = words * Constants.BYTES_PER_WORD;
+        for (int ii = free.size() - 1; ii >= 0; --ii) {
+            ByteBuffer buffer = free.get(ii);
+            if (buffer.capacity() >= bytes) {
+                free.remove(ii);
+                buffer.clear();
+                return buffer;
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Takes back a buffer of which only the first `usedWords` words were written to.
+     */
+    public void release(ByteBuffer buffer, int usedWords) {
+        if (free.size() >= maxRetained) {
+            return;
+        }
+        zero(buffer, usedWords * Constants.BYTES_PER_WORD);
+        free.add(buffer);
+    }
+
+    static void zero(ByteBuffer buffer, int bytes) {
+        WireHelpers.memset(buffer, 0, (byte) 0, bytes);
+    }
+}
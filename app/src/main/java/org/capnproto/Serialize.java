@@ -22,11 +22,15 @@
 package org.capnproto;
 
 import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 public final class Serialize {
 
@@ -151,6 +155,116 @@ public final class Serialize {
         return new MessageReader(segmentSlices, options);
     }
 
+    public static Iterable<MessageReader> readMapped(FileChannel channel) throws IOException {
+        return readMapped(channel, ReaderOptions.DEFAULT_READER_OPTIONS);
+    }
+
+    // Largest mapping FileChannel.map can return.
+    static final int MAX_MAPPED_WINDOW = Integer.MAX_VALUE;
+
+    /*
+     * Maps `channel` from its current position to the end and reads the messages
+     * stored there back to back. Segments are slices of the mapping, so nothing
+     * is copied, and each message is only looked at when the iteration gets to it.
+     *
+     * A single mapping can't exceed 2 GB, so larger files are mapped in windows of
+     * up to that size, starting a new window at the first message that doesn't fit
+     * into the current one. The channel has to stay open while iterating over a
+     * file that needs more than one window; earlier windows stay valid after it is
+     * closed. A message that is truncated or larger than a window is reported as
+     * a DecodeException.
+     */
+    public static Iterable<MessageReader> readMapped(FileChannel channel, ReaderOptions options)
+        throws IOException {
+        return readMapped(channel, options, MAX_MAPPED_WINDOW);
+    }
+
+    static Iterable<MessageReader> readMapped(final FileChannel channel, final ReaderOptions options,
+                                              final int windowSize) throws IOException {
+        final long start = channel.position();
+        final long end = channel.size();
+        final ByteBuffer firstWindow = map(channel, start, Math.min(windowSize, end - start));
+        return new Iterable<MessageReader>() {
+            public Iterator<MessageReader> iterator() {
+                return new Iterator<MessageReader>() {
+                    ByteBuffer window = firstWindow.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+                    long windowStart = start;
+
+                    public boolean hasNext() {
+                        return windowStart + window.position() < end;
+                    }
+
+                    public MessageReader next() {
+                        long offset = windowStart + window.position();
+                        if (offset >= end) {
+                            throw new NoSuchElementException();
+                        }
+                        long messageSize = messageSize(offset);
+                        if (messageSize > windowSize) {
+                            throw new DecodeException("Message of " + messageSize
+                                    + " bytes does not fit into a mapping.");
+                        }
+                        ensureMapped(offset, messageSize);
+                        try {
+                            return read(window, options);
+                        } catch (IOException e) {
+                            throw new DecodeException(e.getMessage());
+                        }
+                    }
+
+                    public void remove() {
+                        throw new UnsupportedOperationException();
+                    }
+
+                    // Size of the message at `offset`, segment table included, checked
+                    // against the end of the file.
+                    private long messageSize(long offset) {
+                        ensureMapped(offset, Constants.BYTES_PER_WORD);
+                        int segmentCount = 1 + window.getInt(window.position());
+                        if (segmentCount <= 0 || segmentCount > 512) {
+                            throw new DecodeException("Invalid segment count: " + segmentCount);
+                        }
+                        int tableSize = (4 + segmentCount * 4 + Constants.BYTES_PER_WORD - 1)
+                                & ~(Constants.BYTES_PER_WORD - 1);
+                        ensureMapped(offset, tableSize);
+                        long words = 0;
+                        for (int ii = 0; ii < segmentCount; ++ii) {
+                            words += window.getInt(window.position() + 4 + ii * 4) & 0xffffffffL;
+                        }
+                        long size = tableSize + words * Constants.BYTES_PER_WORD;
+                        if (size > end - offset) {
+                            throw new DecodeException("Truncated message at end of file.");
+                        }
+                        return size;
+                    }
+
+                    // Makes the window cover `size` bytes from `offset`, starting a new
+                    // window there if it doesn't yet.
+                    private void ensureMapped(long offset, long size) {
+                        if (size > end - offset) {
+                            throw new DecodeException("Truncated message at end of file.");
+                        }
+                        if (offset + size <= windowStart + window.limit()) {
+                            return;
+                        }
+                        try {
+                            window = map(channel, offset, Math.min(windowSize, end - offset));
+                        } catch (IOException e) {
+                            throw new DecodeException(e.getMessage());
+                        }
+                        windowStart = offset;
+                    }
+                };
+            }
+        };
+    }
+
+    private static ByteBuffer map(FileChannel channel, long offset, long size) throws IOException {
+        ByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+        mapped.order(ByteOrder.LITTLE_ENDIAN);
+        return mapped;
+    }
+
     public static long computeSerializedSizeInWords(MessageBuilder message) {
         final ByteBuffer[] segments = message.getSegmentsForOutput();
 
@@ -175,21 +289,39 @@ public final class Serialize {
         return bytes / Constants.BYTES_PER_WORD;
     }
 
+    // A segment table takes at most (512 + 2) * 4 bytes; each thread keeps one that size.
+    private static final ThreadLocal<ByteBuffer> segmentTables = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return makeByteBuffer(4 * 514);
+        }
+    };
+
+    /*
+     * Channels that implement GatheringByteChannel get the segment table and all
+     * segments in one write(ByteBuffer[]) call instead of one call each.
+     */
     public static void write(WritableByteChannel outputChannel,
                              MessageBuilder message) throws IOException {
         ByteBuffer[] segments = message.getSegmentsForOutput();
-        int tableSize = (segments.length + 2) & (~1);
+        ByteBuffer table = segmentTable(segments);
 
-        ByteBuffer table = ByteBuffer.allocate(4 * tableSize);
-        table.order(ByteOrder.LITTLE_ENDIAN);
+        if (outputChannel instanceof GatheringByteChannel) {
+            GatheringByteChannel gathering = (GatheringByteChannel) outputChannel;
+            ByteBuffer[] buffers = new ByteBuffer[segments.length + 1];
+            buffers[0] = table;
+            System.arraycopy(segments, 0, buffers, 1, segments.length);
 
-        table.putInt(0, segments.length - 1);
-
-        for (int i = 0; i < segments.length; ++i) {
-            table.putInt(4 * (i + 1), segments[i].limit() / 8);
+            long remaining = table.remaining();
+            for (ByteBuffer buffer : segments) {
+                remaining += buffer.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= gathering.write(buffers);
+            }
+            return;
         }
 
-        // Any padding is already zeroed.
         while (table.hasRemaining()) {
             outputChannel.write(table);
         }
@@ -200,4 +332,24 @@ public final class Serialize {
             }
         }
     }
+
+    private static ByteBuffer segmentTable(ByteBuffer[] segments) {
+        int tableSize = (segments.length + 2) & (~1);
+
+        ByteBuffer table = segmentTables.get();
+        if (table.capacity() < 4 * tableSize) {
+            table = makeByteBuffer(4 * tableSize);
+        }
+        table.clear();
+        table.limit(4 * tableSize);
+
+        // padding, if there is any, is overwritten below otherwise
+        table.putInt(4 * (tableSize - 1), 0);
+        table.putInt(0, segments.length - 1);
+
+        for (int i = 0; i < segments.length; ++i) {
+            table.putInt(4 * (i + 1), segments[i].limit() / 8);
+        }
+        return table;
+    }
 }
@@ -91,6 +91,16 @@ public final class StructList {
             return _getStructElement(factory, index);
         }
 
+        /**
+         * Like {@link #get(int)}, but points <code>reuse</code>, a reader of this list's
+         * element type, at the element instead of creating a new reader. Scanning a list
+         * with <code>r = list.get(i, r)</code> creates one reader in total; a null
+         * <code>reuse</code> creates it on the first call.
+         */
+        public T get(int index, T reuse) {
+            return _getStructElement(factory, index, reuse);
+        }
+
 
         public final class Iterator implements java.util.Iterator<T> {
             public Reader<T> list;
@@ -28,12 +28,13 @@ public class StructReader {
                                    int nestingLimit);
     }
 
-    protected final SegmentReader segment;
-    protected final int data; //byte offset to data section
-    protected final int pointers; // word offset of pointer section
-    protected final int dataSize; // in bits
-    protected final short pointerCount;
-    protected final int nestingLimit;
+    // not final so that StructList.Reader.get(int, T) can reposition a reader
+    protected SegmentReader segment;
+    protected int data; //byte offset to data section
+    protected int pointers; // word offset of pointer section
+    protected int dataSize; // in bits
+    protected short pointerCount;
+    protected int nestingLimit;
 
     public StructReader() {
         this.segment = SegmentReader.EMPTY;
@@ -55,6 +56,17 @@ public class StructReader {
         this.nestingLimit = nestingLimit;
     }
 
+    final void moveTo(SegmentReader segment, int data,
+                      int pointers, int dataSize, short pointerCount,
+                      int nestingLimit) {
+        this.segment = segment;
+        this.data = data;
+        this.pointers = pointers;
+        this.dataSize = dataSize;
+        this.pointerCount = pointerCount;
+        this.nestingLimit = nestingLimit;
+    }
+
     protected final boolean _getBooleanField(int offset) {
         // XXX should use unsigned operations
         if (offset < this.dataSize) {
@@ -22,6 +22,7 @@
 package org.capnproto;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 
 public final class Text {
     public static final class Factory implements
@@ -63,6 +64,10 @@ public final class Text {
     }
     public static final Factory factory = new Factory();
 
+    static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final ByteBuffer EMPTY_BUFFER = ByteBuffer.allocate(0);
+
     public static final class Reader {
         public final ByteBuffer buffer;
         public final int offset; // in bytes
@@ -82,14 +87,10 @@ public final class Text {
         }
 
         public Reader(String value) {
-            try {
-                byte[] bytes = value.getBytes("UTF-8");
-                this.buffer = ByteBuffer.wrap(bytes);
-                this.offset = 0;
-                this.size = bytes.length;
-            } catch (java.io.UnsupportedEncodingException e) {
-                throw new Error("UTF-8 is unsupported");
-            }
+            byte[] bytes = encode(value);
+            this.buffer = ByteBuffer.wrap(bytes);
+            this.offset = 0;
+            this.size = bytes.length;
         }
 
         public final int size() {
@@ -104,21 +105,452 @@ public final class Text {
             return result;
         }
 
+        public final boolean isAscii() {
+            return Text.isAscii(this.buffer, this.offset, this.size);
+        }
+
+        /**
+         * Text as a {@link CharSequence}. ASCII text is returned as a view over the
+         * message buffer without copying; anything else is decoded.
+         */
+        public final CharSequence asCharSequence() {
+            if (isAscii()) {
+                return new AsciiSequence(this.buffer, this.offset, this.size);
+            }
+            return toString();
+        }
+
+        /**
+         * Whether this text decodes to <code>value</code>, compared without decoding.
+         */
+        public final boolean contentEquals(String value) {
+            return Text.contentEquals(this.buffer, this.offset, this.size, value);
+        }
+
+        public final boolean startsWith(String prefix) {
+            return Text.startsWith(this.buffer, this.offset, this.size, prefix);
+        }
+
+        /**
+         * Same value as <code>toString().hashCode()</code>, computed from the bytes.
+         */
+        @Override
+        public final int hashCode() {
+            return Text.hashCode(this.buffer, this.offset, this.size);
+        }
+
+        /**
+         * Byte-wise comparison with another Reader.
+         */
+        @Override
+        public final boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof Reader)) {
+                return false;
+            }
+            Reader that = (Reader) other;
+            if (this.size != that.size) {
+                return false;
+            }
+            int i = 0;
+            if (this.buffer.order() == that.buffer.order()) {
+                for (; i + 8 <= this.size; i += 8) {
+                    if (this.buffer.getLong(this.offset + i) != that.buffer.getLong(that.offset + i)) {
+                        return false;
+                    }
+                }
+            }
+            for (; i < this.size; ++i) {
+                if (this.buffer.get(this.offset + i) != that.buffer.get(that.offset + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
         @Override
         public final String toString() {
-            byte[] bytes = new byte[this.size];
+            return decode(this.buffer, this.offset, this.size);
+        }
 
-            ByteBuffer dup = this.buffer.duplicate();
-            dup.position(this.offset);
-            dup.get(bytes, 0, this.size);
+    }
+
+    /**
+     * A mutable view of one text value, moved from element to element by
+     * {@link TextList.Reader#get(int, Cursor)}. Scanning a text list through one
+     * cursor creates no objects besides the strings asked for; what it points at
+     * changes with every <code>get</code>.
+     */
+    public static final class Cursor {
+        ByteBuffer buffer = EMPTY_BUFFER;
+        int offset; // in bytes
+        int size; // in bytes, not including NUL terminator
+
+        final void moveTo(ByteBuffer buffer, int offset, int size) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.size = size;
+        }
+
+        public final int size() {
+            return this.size;
+        }
+
+        public final boolean isAscii() {
+            return Text.isAscii(this.buffer, this.offset, this.size);
+        }
+
+        public final boolean contentEquals(String value) {
+            return Text.contentEquals(this.buffer, this.offset, this.size, value);
+        }
+
+        public final boolean startsWith(String prefix) {
+            return Text.startsWith(this.buffer, this.offset, this.size, prefix);
+        }
+
+        @Override
+        public final String toString() {
+            return decode(this.buffer, this.offset, this.size);
+        }
+    }
+
+    /**
+     * Decoded strings for the text of one message, looked up by content. Repeated
+     * text is decoded once, and a hit only compares bytes. Slots are direct-mapped,
+     * so a colliding string just replaces the previous one.
+     */
+    public static final class Cache {
+        private final String[] strings;
+
+        public Cache() {
+            this(64);
+        }
+
+        public Cache(int size) {
+            int capacity = Integer.highestOneBit(Math.max(size - 1, 1)) << 1;
+            this.strings = new String[capacity];
+        }
+
+        public String get(Reader text) {
+            return get(text.buffer, text.offset, text.size);
+        }
+
+        public String get(Cursor text) {
+            return get(text.buffer, text.offset, text.size);
+        }
+
+        private String get(ByteBuffer buffer, int offset, int size) {
+            int hash = Text.hashCode(buffer, offset, size);
+            int slot = (hash ^ (hash >>> 16)) & (this.strings.length - 1);
+            String string = this.strings[slot];
+            if (string == null || string.hashCode() != hash
+                || !Text.contentEquals(buffer, offset, size, string)) {
+                string = decode(buffer, offset, size);
+                this.strings[slot] = string;
+            }
+            return string;
+        }
+    }
+
+    private static final class AsciiSequence implements CharSequence {
+        private final ByteBuffer buffer;
+        private final int offset;
+        private final int length;
+
+        AsciiSequence(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return this.length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= this.length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + this.length);
+            }
+            return (char) this.buffer.get(this.offset + index);
+        }
 
-            try {
-                return new String(bytes, "UTF-8");
-            } catch (java.io.UnsupportedEncodingException e) {
-                throw new Error("UTF-8 is unsupported");
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > this.length || start > end) {
+                throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + this.length);
             }
+            return new AsciiSequence(this.buffer, this.offset + start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return decode(this.buffer, this.offset, this.length);
+        }
+    }
+
+    private static final long MALFORMED = -2;
+
+    private static int matchedChars(long matched) {
+        return (int) (matched >>> 32);
+    }
+
+    private static int matchedBytes(long matched) {
+        return (int) matched;
+    }
+
+    static boolean contentEquals(ByteBuffer buffer, int offset, int size, String value) {
+        long matched = match(buffer, offset, size, value);
+        if (matched == MALFORMED) {
+            return decode(buffer, offset, size).equals(value);
+        }
+        return matched >= 0 && matchedBytes(matched) == size
+            && matchedChars(matched) == value.length();
+    }
+
+    static boolean startsWith(ByteBuffer buffer, int offset, int size, String prefix) {
+        long matched = match(buffer, offset, size, prefix);
+        if (matched == MALFORMED) {
+            return decode(buffer, offset, size).startsWith(prefix);
+        }
+        return matched >= 0 && matchedChars(matched) == prefix.length();
+    }
+
+    /**
+     * Walks the UTF-8 bytes and <code>value</code> together while their chars agree.
+     * @return chars of <code>value</code> consumed in the high half and bytes
+     *   consumed in the low half, -1 on a mismatch, or {@link #MALFORMED}
+     */
+    private static long match(ByteBuffer buffer, int offset, int size, String value) {
+        int pos = offset;
+        int end = offset + size;
+        int i = 0;
+        int length = value.length();
+        while (i < length && pos < end) {
+            int b = buffer.get(pos);
+            if (b >= 0) {
+                if (value.charAt(i) != b) {
+                    return -1;
+                }
+                ++i;
+                ++pos;
+                continue;
+            }
+            int codePoint = decodeMultiByte(buffer, pos, end);
+            if (codePoint < 0) {
+                return MALFORMED;
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                if (value.charAt(i) != codePoint) {
+                    return -1;
+                }
+                ++i;
+            } else {
+                if (value.charAt(i) != highSurrogate(codePoint)) {
+                    return -1;
+                }
+                if (++i == length) {
+                    // prefix ends between the two halves of a pair
+                    return ((long) i << 32) | (pos - offset);
+                }
+                if (value.charAt(i) != lowSurrogate(codePoint)) {
+                    return -1;
+                }
+                ++i;
+            }
+            pos += encodedLength(codePoint);
+        }
+        return ((long) i << 32) | (pos - offset);
+    }
+
+    static int hashCode(ByteBuffer buffer, int offset, int size) {
+        int pos = offset;
+        int end = offset + size;
+        int hash = 0;
+        while (pos < end) {
+            int b = buffer.get(pos);
+            if (b >= 0) {
+                hash = 31 * hash + b;
+                ++pos;
+                continue;
+            }
+            int codePoint = decodeMultiByte(buffer, pos, end);
+            if (codePoint < 0) {
+                return decode(buffer, offset, size).hashCode();
+            }
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                hash = 31 * hash + codePoint;
+            } else {
+                hash = 31 * hash + highSurrogate(codePoint);
+                hash = 31 * hash + lowSurrogate(codePoint);
+            }
+            pos += encodedLength(codePoint);
+        }
+        return hash;
+    }
+
+    static boolean isAscii(ByteBuffer buffer, int offset, int size) {
+        int i = 0;
+        for (; i + 8 <= size; i += 8) {
+            if ((buffer.getLong(offset + i) & 0x8080808080808080L) != 0) {
+                return false;
+            }
+        }
+        for (; i < size; ++i) {
+            if (buffer.get(offset + i) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("deprecation")
+    static String decode(ByteBuffer buffer, int offset, int size) {
+        boolean ascii = isAscii(buffer, offset, size);
+        if (buffer.hasArray()) {
+            int start = buffer.arrayOffset() + offset;
+            // the hibyte constructor widens bytes to chars without going through a decoder
+            return ascii ? new String(buffer.array(), 0, start, size)
+                         : new String(buffer.array(), start, size, UTF_8);
         }
 
+        byte[] bytes = new byte[size];
+        ByteBuffer dup = buffer.duplicate();
+        dup.position(offset);
+        dup.get(bytes, 0, size);
+        return ascii ? new String(bytes, 0, 0, size) : new String(bytes, UTF_8);
+    }
+
+    /**
+     * Bytes that <code>value</code> takes in UTF-8, as encoded by {@link Builder#write}.
+     */
+    public static int encodedSize(String value) {
+        int length = value.length();
+        int size = length;
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                size += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                size += 2; // four bytes for the two chars
+                ++i;
+            } else if (!Character.isSurrogate(c)) {
+                size += 2;
+            } // an unpaired surrogate is replaced by '?'
+        }
+        return size;
+    }
+
+    /*
+     * Writes `value` as UTF-8 at `offset`, the way String.getBytes("UTF-8") would.
+     */
+    static void encode(String value, ByteBuffer buffer, int offset) {
+        int length = value.length();
+        int pos = offset;
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put(pos++, (byte) c);
+            } else if (c < 0x800) {
+                buffer.put(pos++, (byte) (0xc0 | (c >> 6)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3f)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                       && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put(pos++, (byte) (0xf0 | (codePoint >> 18)));
+                buffer.put(pos++, (byte) (0x80 | ((codePoint >> 12) & 0x3f)));
+                buffer.put(pos++, (byte) (0x80 | ((codePoint >> 6) & 0x3f)));
+                buffer.put(pos++, (byte) (0x80 | (codePoint & 0x3f)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put(pos++, (byte) '?');
+            } else {
+                buffer.put(pos++, (byte) (0xe0 | (c >> 12)));
+                buffer.put(pos++, (byte) (0x80 | ((c >> 6) & 0x3f)));
+                buffer.put(pos++, (byte) (0x80 | (c & 0x3f)));
+            }
+        }
+    }
+
+    static boolean isAscii(String value) {
+        int length = value.length();
+        for (int i = 0; i < length; ++i) {
+            if (value.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static byte[] encode(String value) {
+        if (!isAscii(value)) {
+            return value.getBytes(UTF_8);
+        }
+        int length = value.length();
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * Decodes the sequence starting with the non-ASCII byte at <code>pos</code>.
+     * @return the code point, or -1 where a decoder would substitute U+FFFD
+     */
+    private static int decodeMultiByte(ByteBuffer buffer, int pos, int end) {
+        int lead = buffer.get(pos) & 0xff;
+        int length;
+        int codePoint;
+        int min;
+        if (lead >= 0xc2 && lead <= 0xdf) {
+            length = 2;
+            codePoint = lead & 0x1f;
+            min = 0x80;
+        } else if (lead >= 0xe0 && lead <= 0xef) {
+            length = 3;
+            codePoint = lead & 0x0f;
+            min = 0x800;
+        } else if (lead >= 0xf0 && lead <= 0xf4) {
+            length = 4;
+            codePoint = lead & 0x07;
+            min = Character.MIN_SUPPLEMENTARY_CODE_POINT;
+        } else {
+            return -1;
+        }
+        if (pos + length > end) {
+            return -1;
+        }
+        for (int i = 1; i < length; ++i) {
+            int b = buffer.get(pos + i);
+            if ((b & 0xc0) != 0x80) {
+                return -1;
+            }
+            codePoint = (codePoint << 6) | (b & 0x3f);
+        }
+        if (codePoint < min || codePoint > Character.MAX_CODE_POINT
+            || (codePoint >= Character.MIN_SURROGATE && codePoint <= Character.MAX_SURROGATE)) {
+            return -1;
+        }
+        return codePoint;
+    }
+
+    private static int encodedLength(int codePoint) {
+        return codePoint < 0x800 ? 2 : codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT ? 3 : 4;
+    }
+
+    private static char highSurrogate(int codePoint) {
+        return (char) ((codePoint >>> 10) + (Character.MIN_HIGH_SURROGATE - (Character.MIN_SUPPLEMENTARY_CODE_POINT >>> 10)));
+    }
+
+    private static char lowSurrogate(int codePoint) {
+        return (char) ((codePoint & 0x3ff) + Character.MIN_LOW_SURROGATE);
     }
 
     public static final class Builder {
@@ -138,6 +570,15 @@ public final class Text {
             this.size = size;
         }
 
+        /**
+         * Fills this text with <code>value</code>, which must take exactly
+         * {@link Text#encodedSize} bytes: the size it was initialized with.
+         */
+        public final void write(String value) {
+            assert encodedSize(value) == this.size : "text was initialized with a different size";
+            Text.encode(value, this.buffer, this.offset);
+        }
+
         public ByteBuffer asByteBuffer() {
             ByteBuffer dup = this.buffer.duplicate();
             dup.position(this.offset);
@@ -148,17 +589,7 @@ public final class Text {
 
         @Override
         public final String toString() {
-            byte[] bytes = new byte[this.size];
-
-            ByteBuffer dup = this.buffer.duplicate();
-            dup.position(this.offset);
-            dup.get(bytes, 0, this.size);
-
-            try {
-                return new String(bytes, "UTF-8");
-            } catch (java.io.UnsupportedEncodingException e) {
-                throw new Error("UTF-8 is unsupported");
-            }
+            return decode(this.buffer, this.offset, this.size);
         }
 
     }
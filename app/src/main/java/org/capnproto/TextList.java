@@ -54,6 +54,17 @@ public final class TextList {
             return _getPointerElement(Text.factory, index);
         }
 
+        /**
+         * Points <code>cursor</code> at element <code>index</code> and returns it. A near
+         * pointer is followed without creating any objects.
+         */
+        public Text.Cursor get(int index, Text.Cursor cursor) {
+            WireHelpers.readTextPointer(this.segment,
+                                        (this.ptr + (int)((long)index * this.step / Constants.BITS_PER_BYTE)) / Constants.BYTES_PER_WORD,
+                                        cursor);
+            return cursor;
+        }
+
         public final class Iterator implements java.util.Iterator<Text.Reader> {
             public Reader list;
             public int idx = 0;
@@ -93,6 +104,10 @@ public final class TextList {
             _setPointerElement(Text.factory, index, value);
         }
 
+        public final void set(int index, String value) {
+            _setTextElement(index, value);
+        }
+
         public final class Iterator implements java.util.Iterator<Text.Builder> {
             public Builder list;
             public int idx = 0;
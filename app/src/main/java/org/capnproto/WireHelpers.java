@@ -22,6 +22,7 @@
 package org.capnproto;
 
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 
 final class WireHelpers {
 
@@ -38,19 +39,31 @@ final class WireHelpers {
         return (int)((bits + 63) / ((long) Constants.BITS_PER_WORD));
     }
 
-    static class AllocateResult {
-        public final int ptr;
-        public final int refOffset;
-        public final SegmentBuilder segment;
-        AllocateResult(int ptr, int refOffset, SegmentBuilder segment) {
-            this.ptr = ptr; this.refOffset = refOffset; this.segment = segment;
+    /*
+     * allocate() returns where the object went packed as by BuilderArena.allocation(), so that
+     * no result object is created per allocation. If the object had to go to another segment,
+     * its pointer is the landing pad in the word before it; these helpers unpack either case.
+     */
+    static SegmentBuilder allocatedSegment(long allocation, SegmentBuilder segment) {
+        int id = BuilderArena.allocationSegmentId(allocation);
+        return id == segment.id ? segment : segment.getArena().getSegment(id);
+    }
+
+    static int allocatedRefOffset(long allocation, SegmentBuilder segment, int refOffset) {
+        if (BuilderArena.allocationSegmentId(allocation) == segment.id) {
+            return refOffset;
         }
+        return BuilderArena.allocationOffset(allocation) - Constants.POINTER_SIZE_IN_WORDS;
     }
 
-    static AllocateResult allocate(int refOffset,
-                                   SegmentBuilder segment,
-                                   int amount, // in words
-                                   byte kind) {
+    static int allocatedPtr(long allocation) {
+        return BuilderArena.allocationOffset(allocation);
+    }
+
+    static long allocate(int refOffset,
+                         SegmentBuilder segment,
+                         int amount, // in words
+                         byte kind) {
 
         long ref = segment.get(refOffset);
         if (!WirePointer.isNull(ref)) {
@@ -59,7 +72,7 @@ final class WireHelpers {
 
         if (amount == 0 && kind == WirePointer.STRUCT) {
             WirePointer.setKindAndTargetForEmptyStruct(segment.buffer, refOffset);
-            return new AllocateResult(refOffset, refOffset, segment);
+            return BuilderArena.allocation(segment.id, refOffset);
         }
 
         int ptr = segment.allocate(amount);
@@ -69,25 +82,27 @@ final class WireHelpers {
             //# the landing pad for a far pointer.
 
             int amountPlusRef = amount + Constants.POINTER_SIZE_IN_WORDS;
-            BuilderArena.AllocateResult allocation = segment.getArena().allocate(amountPlusRef);
+            BuilderArena arena = segment.getArena();
+            long allocation = arena.allocate(amountPlusRef);
+            SegmentBuilder farSegment = arena.getSegment(BuilderArena.allocationSegmentId(allocation));
 
             //# Set up the original pointer to be a far pointer to
             //# the new segment.
-            FarPointer.set(segment.buffer, refOffset, false, allocation.offset);
-            FarPointer.setSegmentId(segment.buffer, refOffset, allocation.segment.id);
+            int resultRefOffset = BuilderArena.allocationOffset(allocation);
+            FarPointer.set(segment.buffer, refOffset, false, resultRefOffset);
+            FarPointer.setSegmentId(segment.buffer, refOffset, farSegment.id);
 
             //# Initialize the landing pad to indicate that the
             //# data immediately follows the pad.
-            int resultRefOffset = allocation.offset;
-            int ptr1 = allocation.offset + Constants.POINTER_SIZE_IN_WORDS;
+            int ptr1 = resultRefOffset + Constants.POINTER_SIZE_IN_WORDS;
 
-            WirePointer.setKindAndTarget(allocation.segment.buffer, resultRefOffset, kind,
+            WirePointer.setKindAndTarget(farSegment.buffer, resultRefOffset, kind,
                                          ptr1);
 
-            return new AllocateResult(ptr1, resultRefOffset, allocation.segment);
+            return BuilderArena.allocation(farSegment.id, ptr1);
         } else {
             WirePointer.setKindAndTarget(segment.buffer, refOffset, kind, ptr);
-            return new AllocateResult(ptr, refOffset, segment);
+            return BuilderArena.allocation(segment.id, ptr);
         }
     }
 
@@ -355,9 +370,9 @@ final class WireHelpers {
             if (landingPadOffset == SegmentBuilder.FAILED_ALLOCATION) {
                 //# Darn, need a double-far.
 
-                BuilderArena.AllocateResult allocation = srcSegment.getArena().allocate(2);
-                SegmentBuilder farSegment = allocation.segment;
-                landingPadOffset = allocation.offset;
+                long allocation = srcSegment.getArena().allocate(2);
+                SegmentBuilder farSegment = srcSegment.getArena().getSegment(BuilderArena.allocationSegmentId(allocation));
+                landingPadOffset = BuilderArena.allocationOffset(allocation);
 
                 FarPointer.set(farSegment.buffer, landingPadOffset, false, srcTargetOffset);
                 FarPointer.setSegmentId(farSegment.buffer, landingPadOffset, srcSegment.id);
@@ -392,10 +407,13 @@ final class WireHelpers {
                                    int refOffset,
                                    SegmentBuilder segment,
                                    StructSize size) {
-        AllocateResult allocation = allocate(refOffset, segment, size.total(), WirePointer.STRUCT);
-        StructPointer.setFromStructSize(allocation.segment.buffer, allocation.refOffset, size);
-        return factory.constructBuilder(allocation.segment, allocation.ptr * Constants.BYTES_PER_WORD,
-                                         allocation.ptr + size.data,
+        long allocation = allocate(refOffset, segment, size.total(), WirePointer.STRUCT);
+        SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+        int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+        int allocationPtr = allocatedPtr(allocation);
+        StructPointer.setFromStructSize(allocationSegment.buffer, allocationRefOffset, size);
+        return factory.constructBuilder(allocationSegment, allocationPtr * Constants.BYTES_PER_WORD,
+                                         allocationPtr + size.data,
                                          size.data * 64, size.pointers);
     }
 
@@ -432,21 +450,24 @@ final class WireHelpers {
             //# Don't let allocate() zero out the object just yet.
             zeroPointerAndFars(segment, refOffset);
 
-            AllocateResult allocation = allocate(refOffset, segment,
-                                                 totalSize, WirePointer.STRUCT);
+            long allocation = allocate(refOffset, segment,
+                                       totalSize, WirePointer.STRUCT);
+            SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+            int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+            int allocationPtr = allocatedPtr(allocation);
 
-            StructPointer.set(allocation.segment.buffer, allocation.refOffset,
+            StructPointer.set(allocationSegment.buffer, allocationRefOffset,
                               newDataSize, newPointerCount);
 
             //# Copy data section.
-            memcpy(allocation.segment.buffer, allocation.ptr * Constants.BYTES_PER_WORD,
+            memcpy(allocationSegment.buffer, allocationPtr * Constants.BYTES_PER_WORD,
                    resolved.segment.buffer, resolved.ptr * Constants.BYTES_PER_WORD,
                    oldDataSize * Constants.BYTES_PER_WORD);
 
             //# Copy pointer section.
-            int newPointerSection = allocation.ptr + newDataSize;
+            int newPointerSection = allocationPtr + newDataSize;
             for (int ii = 0; ii < oldPointerCount; ++ii) {
-                transferPointer(allocation.segment, newPointerSection + ii,
+                transferPointer(allocationSegment, newPointerSection + ii,
                                 resolved.segment, oldPointerSection + ii);
             }
 
@@ -458,7 +479,7 @@ final class WireHelpers {
             memset(resolved.segment.buffer, resolved.ptr * Constants.BYTES_PER_WORD, (byte)0,
                    (oldDataSize + oldPointerCount * Constants.WORDS_PER_POINTER) * Constants.BYTES_PER_WORD);
 
-            return factory.constructBuilder(allocation.segment, allocation.ptr * Constants.BYTES_PER_WORD,
+            return factory.constructBuilder(allocationSegment, allocationPtr * Constants.BYTES_PER_WORD,
                                             newPointerSection, newDataSize * Constants.BITS_PER_WORD,
                                             newPointerCount);
         } else {
@@ -480,12 +501,15 @@ final class WireHelpers {
         int pointerCount = ElementSize.pointersPerElement(elementSize);
         int step = dataSize + pointerCount * Constants.BITS_PER_POINTER;
         int wordCount = roundBitsUpToWords((long)elementCount * (long)step);
-        AllocateResult allocation = allocate(refOffset, segment, wordCount, WirePointer.LIST);
+        long allocation = allocate(refOffset, segment, wordCount, WirePointer.LIST);
+        SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+        int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+        int allocationPtr = allocatedPtr(allocation);
 
-        ListPointer.set(allocation.segment.buffer, allocation.refOffset, elementSize, elementCount);
+        ListPointer.set(allocationSegment.buffer, allocationRefOffset, elementSize, elementCount);
 
-        return factory.constructBuilder(allocation.segment,
-                                        allocation.ptr * Constants.BYTES_PER_WORD,
+        return factory.constructBuilder(allocationSegment,
+                                        allocationPtr * Constants.BYTES_PER_WORD,
                                         elementCount, step, dataSize, (short)pointerCount);
     }
 
@@ -498,17 +522,20 @@ final class WireHelpers {
 
         //# Allocate the list, prefixed by a single WirePointer.
         int wordCount = elementCount * wordsPerElement;
-        AllocateResult allocation = allocate(refOffset, segment, Constants.POINTER_SIZE_IN_WORDS + wordCount,
-                                             WirePointer.LIST);
+        long allocation = allocate(refOffset, segment, Constants.POINTER_SIZE_IN_WORDS + wordCount,
+                                   WirePointer.LIST);
+        SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+        int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+        int allocationPtr = allocatedPtr(allocation);
 
         //# Initialize the pointer.
-        ListPointer.setInlineComposite(allocation.segment.buffer, allocation.refOffset, wordCount);
-        WirePointer.setKindAndInlineCompositeListElementCount(allocation.segment.buffer, allocation.ptr,
+        ListPointer.setInlineComposite(allocationSegment.buffer, allocationRefOffset, wordCount);
+        WirePointer.setKindAndInlineCompositeListElementCount(allocationSegment.buffer, allocationPtr,
                                                               WirePointer.STRUCT, elementCount);
-        StructPointer.setFromStructSize(allocation.segment.buffer, allocation.ptr, elementSize);
+        StructPointer.setFromStructSize(allocationSegment.buffer, allocationPtr, elementSize);
 
-        return factory.constructBuilder(allocation.segment,
-                                        (allocation.ptr + 1) * Constants.BYTES_PER_WORD,
+        return factory.constructBuilder(allocationSegment,
+                                        (allocationPtr + 1) * Constants.BYTES_PER_WORD,
                                         elementCount, wordsPerElement * Constants.BITS_PER_WORD,
                                         elementSize.data * Constants.BITS_PER_WORD, elementSize.pointers);
     }
@@ -624,25 +651,28 @@ final class WireHelpers {
             //# Don't let allocate() zero out the object just yet.
             zeroPointerAndFars(origSegment, origRefOffset);
 
-            AllocateResult allocation = allocate(origRefOffset, origSegment,
-                                                 totalSize + Constants.POINTER_SIZE_IN_WORDS,
-                                                 WirePointer.LIST);
+            long allocation = allocate(origRefOffset, origSegment,
+                                       totalSize + Constants.POINTER_SIZE_IN_WORDS,
+                                       WirePointer.LIST);
+            SegmentBuilder allocationSegment = allocatedSegment(allocation, origSegment);
+            int allocationRefOffset = allocatedRefOffset(allocation, origSegment, origRefOffset);
+            int allocationPtr = allocatedPtr(allocation);
 
-            ListPointer.setInlineComposite(allocation.segment.buffer, allocation.refOffset, totalSize);
+            ListPointer.setInlineComposite(allocationSegment.buffer, allocationRefOffset, totalSize);
 
-            long tag = allocation.segment.get(allocation.ptr);
+            long tag = allocationSegment.get(allocationPtr);
             WirePointer.setKindAndInlineCompositeListElementCount(
-                allocation.segment.buffer, allocation.ptr,
+                allocationSegment.buffer, allocationPtr,
                 WirePointer.STRUCT, elementCount);
-            StructPointer.set(allocation.segment.buffer, allocation.ptr,
+            StructPointer.set(allocationSegment.buffer, allocationPtr,
                               newDataSize, newPointerCount);
-            int newPtr = allocation.ptr + Constants.POINTER_SIZE_IN_WORDS;
+            int newPtr = allocationPtr + Constants.POINTER_SIZE_IN_WORDS;
 
             int src = oldPtr;
             int dst = newPtr;
             for (int ii = 0; ii < elementCount; ++ii) {
                 //# Copy data section.
-                memcpy(allocation.segment.buffer, dst * Constants.BYTES_PER_WORD,
+                memcpy(allocationSegment.buffer, dst * Constants.BYTES_PER_WORD,
                        resolved.segment.buffer, src * Constants.BYTES_PER_WORD,
                        oldDataSize * Constants.BYTES_PER_WORD);
 
@@ -650,7 +680,7 @@ final class WireHelpers {
                 int newPointerSection = dst + newDataSize;
                 int oldPointerSection = src + oldDataSize;
                 for (int jj = 0; jj < oldPointerCount; ++jj) {
-                    transferPointer(allocation.segment, newPointerSection + jj,
+                    transferPointer(allocationSegment, newPointerSection + jj,
                                     resolved.segment, oldPointerSection + jj);
                 }
 
@@ -662,7 +692,7 @@ final class WireHelpers {
             memset(resolved.segment.buffer, resolved.ptr * Constants.BYTES_PER_WORD,
                    (byte)0, oldStep * elementCount * Constants.BYTES_PER_WORD);
 
-            return factory.constructBuilder(allocation.segment, newPtr * Constants.BYTES_PER_WORD,
+            return factory.constructBuilder(allocationSegment, newPtr * Constants.BYTES_PER_WORD,
                                             elementCount,
                                             newStep * Constants.BITS_PER_WORD,
                                             newDataSize * Constants.BITS_PER_WORD,
@@ -703,19 +733,22 @@ final class WireHelpers {
                 //# Don't let allocate() zero out the object just yet.
                 zeroPointerAndFars(origSegment, origRefOffset);
 
-                AllocateResult allocation = allocate(origRefOffset, origSegment,
-                                                     totalWords + Constants.POINTER_SIZE_IN_WORDS,
-                                                     WirePointer.LIST);
+                long allocation = allocate(origRefOffset, origSegment,
+                                           totalWords + Constants.POINTER_SIZE_IN_WORDS,
+                                           WirePointer.LIST);
+                SegmentBuilder allocationSegment = allocatedSegment(allocation, origSegment);
+                int allocationRefOffset = allocatedRefOffset(allocation, origSegment, origRefOffset);
+                int allocationPtr = allocatedPtr(allocation);
 
-                ListPointer.setInlineComposite(allocation.segment.buffer, allocation.refOffset, totalWords);
+                ListPointer.setInlineComposite(allocationSegment.buffer, allocationRefOffset, totalWords);
 
-                long tag = allocation.segment.get(allocation.ptr);
+                long tag = allocationSegment.get(allocationPtr);
                 WirePointer.setKindAndInlineCompositeListElementCount(
-                    allocation.segment.buffer, allocation.ptr,
+                    allocationSegment.buffer, allocationPtr,
                     WirePointer.STRUCT, elementCount);
-                StructPointer.set(allocation.segment.buffer, allocation.ptr,
+                StructPointer.set(allocationSegment.buffer, allocationPtr,
                                   newDataSize, newPointerCount);
-                int newPtr = allocation.ptr + Constants.POINTER_SIZE_IN_WORDS;
+                int newPtr = allocationPtr + Constants.POINTER_SIZE_IN_WORDS;
 
                 if (oldSize == ElementSize.POINTER) {
                     int dst = newPtr + newDataSize;
@@ -730,7 +763,7 @@ final class WireHelpers {
                     int srcByteOffset = resolved.ptr * Constants.BYTES_PER_WORD;
                     int oldByteStep = oldDataSize / Constants.BITS_PER_BYTE;
                     for (int ii = 0; ii < elementCount; ++ii) {
-                        memcpy(allocation.segment.buffer, dst * Constants.BYTES_PER_WORD,
+                        memcpy(allocationSegment.buffer, dst * Constants.BYTES_PER_WORD,
                                resolved.segment.buffer, srcByteOffset, oldByteStep);
                         srcByteOffset += oldByteStep;
                         dst += newStep;
@@ -741,7 +774,7 @@ final class WireHelpers {
                 memset(resolved.segment.buffer, resolved.ptr * Constants.BYTES_PER_WORD,
                        (byte)0, roundBitsUpToBytes(oldStep * elementCount));
 
-                return factory.constructBuilder(allocation.segment, newPtr * Constants.BYTES_PER_WORD,
+                return factory.constructBuilder(allocationSegment, newPtr * Constants.BYTES_PER_WORD,
                                                 elementCount,
                                                 newStep * Constants.BITS_PER_WORD,
                                                 newDataSize * Constants.BITS_PER_WORD,
@@ -754,30 +787,41 @@ final class WireHelpers {
     static Text.Builder initTextPointer(int refOffset,
                                         SegmentBuilder segment,
                                         int size) {
+        long allocation = allocateText(refOffset, segment, size);
+        return new Text.Builder(allocatedSegment(allocation, segment).buffer,
+                                allocatedPtr(allocation) * Constants.BYTES_PER_WORD, size);
+    }
+
+    static void setTextPointer(int refOffset,
+                               SegmentBuilder segment,
+                               Text.Reader value) {
+        long allocation = allocateText(refOffset, segment, value.size);
+        memcpy(allocatedSegment(allocation, segment).buffer, allocatedPtr(allocation) * Constants.BYTES_PER_WORD,
+               value.buffer, value.offset, value.size);
+    }
+
+    static void setTextPointer(int refOffset,
+                               SegmentBuilder segment,
+                               String value) {
+        long allocation = allocateText(refOffset, segment, Text.encodedSize(value));
+        Text.encode(value, allocatedSegment(allocation, segment).buffer,
+                    allocatedPtr(allocation) * Constants.BYTES_PER_WORD);
+    }
+
+    private static long allocateText(int refOffset,
+                                     SegmentBuilder segment,
+                                     int size) {
         //# The byte list must include a NUL terminator.
         int byteSize = size + 1;
 
         //# Allocate the space.
-        AllocateResult allocation = allocate(refOffset, segment, roundBytesUpToWords(byteSize),
-                                             WirePointer.LIST);
+        long allocation = allocate(refOffset, segment, roundBytesUpToWords(byteSize),
+                                   WirePointer.LIST);
 
         //# Initialize the pointer.
-        ListPointer.set(allocation.segment.buffer, allocation.refOffset, ElementSize.BYTE, byteSize);
-
-        return new Text.Builder(allocation.segment.buffer, allocation.ptr * Constants.BYTES_PER_WORD, size);
-    }
-
-    static Text.Builder setTextPointer(int refOffset,
-                                       SegmentBuilder segment,
-                                       Text.Reader value) {
-        Text.Builder builder = initTextPointer(refOffset, segment, value.size);
-
-        ByteBuffer slice = value.buffer.duplicate();
-        slice.position(value.offset);
-        slice.limit(value.offset + value.size);
-        builder.buffer.position(builder.offset);
-        builder.buffer.put(slice);
-        return builder;
+        ListPointer.set(allocatedSegment(allocation, segment).buffer,
+                        allocatedRefOffset(allocation, segment, refOffset), ElementSize.BYTE, byteSize);
+        return allocation;
     }
 
     static Text.Builder getWritableTextPointer(int refOffset,
@@ -827,13 +871,16 @@ final class WireHelpers {
                                         SegmentBuilder segment,
                                         int size) {
         //# Allocate the space.
-        AllocateResult allocation = allocate(refOffset, segment, roundBytesUpToWords(size),
-                                             WirePointer.LIST);
+        long allocation = allocate(refOffset, segment, roundBytesUpToWords(size),
+                                   WirePointer.LIST);
+        SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+        int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+        int allocationPtr = allocatedPtr(allocation);
 
         //# Initialize the pointer.
-        ListPointer.set(allocation.segment.buffer, allocation.refOffset, ElementSize.BYTE, size);
+        ListPointer.set(allocationSegment.buffer, allocationRefOffset, ElementSize.BYTE, size);
 
-        return new Data.Builder(allocation.segment.buffer, allocation.ptr * Constants.BYTES_PER_WORD, size);
+        return new Data.Builder(allocationSegment.buffer, allocationPtr * Constants.BYTES_PER_WORD, size);
     }
 
     static Data.Builder setDataPointer(int refOffset,
@@ -929,23 +976,26 @@ final class WireHelpers {
         short dataSize = (short)roundBitsUpToWords(value.dataSize);
         int totalSize = dataSize + value.pointerCount * Constants.POINTER_SIZE_IN_WORDS;
 
-        AllocateResult allocation = allocate(refOffset, segment, totalSize, WirePointer.STRUCT);
-        StructPointer.set(allocation.segment.buffer, allocation.refOffset,
+        long allocation = allocate(refOffset, segment, totalSize, WirePointer.STRUCT);
+        SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+        int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+        int allocationPtr = allocatedPtr(allocation);
+        StructPointer.set(allocationSegment.buffer, allocationRefOffset,
                           dataSize, value.pointerCount);
 
         if (value.dataSize == 1) {
             throw new Error("single bit case not handled");
         } else {
-            memcpy(allocation.segment.buffer, allocation.ptr * Constants.BYTES_PER_WORD,
+            memcpy(allocationSegment.buffer, allocationPtr * Constants.BYTES_PER_WORD,
                    value.segment.buffer, value.data, value.dataSize / Constants.BITS_PER_BYTE);
         }
 
-        int pointerSection = allocation.ptr + dataSize;
+        int pointerSection = allocationPtr + dataSize;
         for (int i = 0; i < value.pointerCount; ++i) {
-            copyPointer(allocation.segment, pointerSection + i, value.segment, value.pointers + i,
+            copyPointer(allocationSegment, pointerSection + i, value.segment, value.pointers + i,
                         value.nestingLimit);
         }
-        return allocation.segment;
+        return allocationSegment;
     };
 
     static SegmentBuilder setListPointer(SegmentBuilder segment, int refOffset, ListReader value) {
@@ -953,13 +1003,16 @@ final class WireHelpers {
 
         if (value.step <= Constants.BITS_PER_WORD) {
             //# List of non-structs.
-            AllocateResult allocation = allocate(refOffset, segment, totalSize, WirePointer.LIST);
+            long allocation = allocate(refOffset, segment, totalSize, WirePointer.LIST);
+            SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+            int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+            int allocationPtr = allocatedPtr(allocation);
 
             if (value.structPointerCount == 1) {
                 //# List of pointers.
-                ListPointer.set(allocation.segment.buffer, allocation.refOffset, ElementSize.POINTER, value.elementCount);
+                ListPointer.set(allocationSegment.buffer, allocationRefOffset, ElementSize.POINTER, value.elementCount);
                 for (int i = 0; i < value.elementCount; ++i) {
-                    copyPointer(allocation.segment, allocation.ptr + i,
+                    copyPointer(allocationSegment, allocationPtr + i,
                                 value.segment, value.ptr / Constants.BYTES_PER_WORD + i, value.nestingLimit);
                 }
             } else {
@@ -976,58 +1029,78 @@ final class WireHelpers {
                     throw new Error("invalid list step size: " + value.step);
                 }
 
-                ListPointer.set(allocation.segment.buffer, allocation.refOffset, elementSize, value.elementCount);
-                memcpy(allocation.segment.buffer, allocation.ptr * Constants.BYTES_PER_WORD,
+                ListPointer.set(allocationSegment.buffer, allocationRefOffset, elementSize, value.elementCount);
+                memcpy(allocationSegment.buffer, allocationPtr * Constants.BYTES_PER_WORD,
                        value.segment.buffer, value.ptr, totalSize * Constants.BYTES_PER_WORD);
             }
-            return allocation.segment;
+            return allocationSegment;
         } else {
             //# List of structs.
-            AllocateResult allocation = allocate(refOffset, segment, totalSize + Constants.POINTER_SIZE_IN_WORDS, WirePointer.LIST);
-            ListPointer.setInlineComposite(allocation.segment.buffer, allocation.refOffset, totalSize);
+            long allocation = allocate(refOffset, segment, totalSize + Constants.POINTER_SIZE_IN_WORDS, WirePointer.LIST);
+            SegmentBuilder allocationSegment = allocatedSegment(allocation, segment);
+            int allocationRefOffset = allocatedRefOffset(allocation, segment, refOffset);
+            int allocationPtr = allocatedPtr(allocation);
+            ListPointer.setInlineComposite(allocationSegment.buffer, allocationRefOffset, totalSize);
             short dataSize = (short)roundBitsUpToWords(value.structDataSize);
             short pointerCount = value.structPointerCount;
 
-            WirePointer.setKindAndInlineCompositeListElementCount(allocation.segment.buffer, allocation.ptr,
+            WirePointer.setKindAndInlineCompositeListElementCount(allocationSegment.buffer, allocationPtr,
                                                                   WirePointer.STRUCT, value.elementCount);
-            StructPointer.set(allocation.segment.buffer, allocation.ptr,
+            StructPointer.set(allocationSegment.buffer, allocationPtr,
                               dataSize, pointerCount);
 
-            int dstOffset = allocation.ptr + Constants.POINTER_SIZE_IN_WORDS;
+            int dstOffset = allocationPtr + Constants.POINTER_SIZE_IN_WORDS;
             int srcOffset = value.ptr / Constants.BYTES_PER_WORD;
 
             for (int i = 0; i < value.elementCount; ++i) {
-                memcpy(allocation.segment.buffer, dstOffset * Constants.BYTES_PER_WORD,
+                memcpy(allocationSegment.buffer, dstOffset * Constants.BYTES_PER_WORD,
                        value.segment.buffer, srcOffset * Constants.BYTES_PER_WORD,
                        value.structDataSize / Constants.BITS_PER_BYTE);
                 dstOffset += dataSize;
                 srcOffset += dataSize;
 
                 for (int j = 0; j < pointerCount; ++j) {
-                    copyPointer(allocation.segment, dstOffset, value.segment, srcOffset, value.nestingLimit);
+                    copyPointer(allocationSegment, dstOffset, value.segment, srcOffset, value.nestingLimit);
                     dstOffset += Constants.POINTER_SIZE_IN_WORDS;
                     srcOffset += Constants.POINTER_SIZE_IN_WORDS;
                 }
             }
-            return allocation.segment;
+            return allocationSegment;
         }
     }
 
     static void memset(ByteBuffer dstBuffer, int dstByteOffset, byte value, int length) {
-        // TODO we can probably do this faster
-        for (int ii = dstByteOffset; ii < dstByteOffset + length; ++ii) {
+        if (dstBuffer.hasArray()) {
+            int start = dstBuffer.arrayOffset() + dstByteOffset;
+            Arrays.fill(dstBuffer.array(), start, start + length, value);
+            return;
+        }
+        int ii = dstByteOffset;
+        int end = dstByteOffset + length;
+        long word = (value & 0xffL) * 0x0101010101010101L;
+        for (; ii + Constants.BYTES_PER_WORD <= end; ii += Constants.BYTES_PER_WORD) {
+            dstBuffer.putLong(ii, word);
+        }
+        for (; ii < end; ++ii) {
             dstBuffer.put(ii, value);
         }
     }
 
     static void memcpy(ByteBuffer dstBuffer, int dstByteOffset, ByteBuffer srcBuffer, int srcByteOffset, int length) {
-        ByteBuffer dstDup = dstBuffer.duplicate();
-        dstDup.position(dstByteOffset);
-        dstDup.limit(dstByteOffset + length);
-        ByteBuffer srcDup = srcBuffer.duplicate();
-        srcDup.position(srcByteOffset);
-        srcDup.limit(srcByteOffset + length);
-        dstDup.put(srcDup);
+        if (dstBuffer.hasArray() && srcBuffer.hasArray()) {
+            System.arraycopy(srcBuffer.array(), srcBuffer.arrayOffset() + srcByteOffset,
+                             dstBuffer.array(), dstBuffer.arrayOffset() + dstByteOffset, length);
+            return;
+        }
+        int ii = 0;
+        if (dstBuffer.order() == srcBuffer.order()) {
+            for (; ii + Constants.BYTES_PER_WORD <= length; ii += Constants.BYTES_PER_WORD) {
+                dstBuffer.putLong(dstByteOffset + ii, srcBuffer.getLong(srcByteOffset + ii));
+            }
+        }
+        for (; ii < length; ++ii) {
+            dstBuffer.put(dstByteOffset + ii, srcBuffer.get(srcByteOffset + ii));
+        }
     }
 
     static SegmentBuilder copyPointer(SegmentBuilder dstSegment, int dstOffset,
@@ -1258,23 +1331,52 @@ final class WireHelpers {
 
         FollowFarsResult resolved = followFars(ref, refTarget, segment);
 
-        int size = ListPointer.elementCount(resolved.ref);
+        int size = checkTextPointer(resolved.ref, resolved.segment, resolved.ptr);
+        return new Text.Reader(resolved.segment.buffer, resolved.ptr, size);
+    }
 
-        if (WirePointer.kind(resolved.ref) != WirePointer.LIST) {
+    static void readTextPointer(SegmentReader segment, int refOffset, Text.Cursor cursor) {
+        long ref = segment.get(refOffset);
+
+        if (WirePointer.isNull(ref)) {
+            cursor.moveTo(segment.buffer, 0, 0);
+            return;
+        }
+
+        int refTarget = WirePointer.target(refOffset, ref);
+
+        if (WirePointer.kind(ref) == WirePointer.FAR) {
+            FollowFarsResult resolved = followFars(ref, refTarget, segment);
+            int size = checkTextPointer(resolved.ref, resolved.segment, resolved.ptr);
+            cursor.moveTo(resolved.segment.buffer, resolved.ptr * Constants.BYTES_PER_WORD, size);
+        } else {
+            // near pointer: skip the FollowFarsResult
+            int size = checkTextPointer(ref, segment, refTarget);
+            cursor.moveTo(segment.buffer, refTarget * Constants.BYTES_PER_WORD, size);
+        }
+    }
+
+    /**
+     * @return size in bytes of the text at word <code>ptr</code>, not counting the NUL
+     */
+    private static int checkTextPointer(long ref, SegmentReader segment, int ptr) {
+        int size = ListPointer.elementCount(ref);
+
+        if (WirePointer.kind(ref) != WirePointer.LIST) {
             throw new DecodeException("Message contains non-list pointer where text was expected.");
         }
 
-        if (ListPointer.elementSize(resolved.ref) != ElementSize.BYTE) {
+        if (ListPointer.elementSize(ref) != ElementSize.BYTE) {
             throw new DecodeException("Message contains list pointer of non-bytes where text was expected.");
         }
 
-        resolved.segment.arena.checkReadLimit(roundBytesUpToWords(size));
+        segment.arena.checkReadLimit(roundBytesUpToWords(size));
 
-        if (size == 0 || resolved.segment.buffer.get(8 * resolved.ptr + size - 1) != 0) {
+        if (size == 0 || segment.buffer.get(8 * ptr + size - 1) != 0) {
             throw new DecodeException("Message contains text that is not NUL-terminated.");
         }
 
-        return new Text.Reader(resolved.segment.buffer, resolved.ptr, size - 1);
+        return size - 1;
     }
 
     static Data.Reader readDataPointer(SegmentReader segment,
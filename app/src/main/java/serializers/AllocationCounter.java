@@ -0,0 +1,111 @@
+package serializers;
+
+import java.lang.reflect.Method;
+
+/**
+ * Per-thread count of allocated bytes, used to report allocation per operation
+ * next to the timings.
+ *<p>
+ * On the JVM this is <code>com.sun.management.ThreadMXBean.getThreadAllocatedBytes</code>,
+ * on Android the <code>android.os.Debug</code> allocation counters. Both are looked up
+ * reflectively since neither API exists on the other platform.
+ */
+public abstract class AllocationCounter
+{
+    public static final long NOT_SUPPORTED = -1L;
+
+    private static final AllocationCounter INSTANCE = create();
+
+    public static AllocationCounter getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * @return Bytes allocated by the calling thread so far, or {@link #NOT_SUPPORTED}
+     */
+    public abstract long allocatedBytes();
+
+    public boolean isSupported() {
+        return true;
+    }
+
+    private static AllocationCounter create()
+    {
+        try {
+            return new JvmCounter();
+        } catch (Exception e) { }
+        try {
+            return new AndroidCounter();
+        } catch (Exception e) { }
+        return new AllocationCounter() {
+            @Override
+            public long allocatedBytes() { return NOT_SUPPORTED; }
+
+            @Override
+            public boolean isSupported() { return false; }
+        };
+    }
+
+    private static final class JvmCounter extends AllocationCounter
+    {
+        private final Object bean;
+        private final Method getThreadAllocatedBytes;
+
+        JvmCounter() throws Exception
+        {
+            bean = Class.forName("java.lang.management.ManagementFactory")
+                    .getMethod("getThreadMXBean").invoke(null);
+            Class<?> beanClass = Class.forName("com.sun.management.ThreadMXBean");
+            if (!beanClass.isInstance(bean)) {
+                throw new IllegalStateException("ThreadMXBean does not support allocation counting");
+            }
+            getThreadAllocatedBytes = beanClass.getMethod("getThreadAllocatedBytes", long.class);
+            Method setEnabled = beanClass.getMethod("setThreadAllocatedMemoryEnabled", boolean.class);
+            setEnabled.invoke(bean, true);
+            allocatedBytes(); // fail now rather than in the middle of a run
+        }
+
+        @Override
+        public long allocatedBytes()
+        {
+            try {
+                return (Long) getThreadAllocatedBytes.invoke(bean, Thread.currentThread().getId());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class AndroidCounter extends AllocationCounter
+    {
+        private final Method getThreadAllocSize;
+
+        // Debug keeps an int counter; widen it per thread so deltas survive wrap-around
+        private final ThreadLocal<long[]> totals = new ThreadLocal<long[]>() {
+            @Override
+            protected long[] initialValue() { return new long[2]; } // { last raw value, total }
+        };
+
+        AndroidCounter() throws Exception
+        {
+            Class<?> debug = Class.forName("android.os.Debug");
+            getThreadAllocSize = debug.getMethod("getThreadAllocSize");
+            debug.getMethod("startAllocCounting").invoke(null);
+        }
+
+        @Override
+        public long allocatedBytes()
+        {
+            int raw;
+            try {
+                raw = (Integer) getThreadAllocSize.invoke(null);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            long[] state = totals.get();
+            state[1] += raw - (int) state[0];
+            state[0] = raw;
+            return state[1];
+        }
+    }
+}
@@ -3,8 +3,10 @@ package serializers;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.io.UnsupportedEncodingException;
@@ -22,6 +24,8 @@ import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.zip.DeflaterOutputStream;
 
+import org.HdrHistogram.Histogram;
+
 /**
  * Common base class for various benchmark implementations.
  */
@@ -55,7 +59,9 @@ abstract class BenchmarkBase
             totalTime("total (nanos)"), timeSerialize("ser (nanos)"), 
             timeDeserialize("deser (nanos)"),
             length("size (bytes)"), lengthDeflate("size+dfl (bytes)"),
-				timeCreate("create (nanos)")
+				timeCreate("create (nanos)"),
+            allocSerialize("ser alloc (bytes)"), allocDeserialize("deser alloc (bytes)"),
+            p99Serialize("ser p99 (nanos)"), p99Deserialize("deser p99 (nanos)")
             ;
 
             public final String displayName;
@@ -77,6 +83,9 @@ abstract class BenchmarkBase
         public Set<String> filterStrings;
         public boolean printChart = false;
         public boolean enableHidden = false;
+        public String latencyFile; // CSV export of latency percentiles, if set
+        public boolean throughput = false; // multi-threaded throughput mode instead of timings
+        public int maxThreads = Runtime.getRuntime().availableProcessors();
 
         // Information in input data file:
         public String dataFileName = "testfile";
@@ -244,6 +253,36 @@ abstract class BenchmarkBase
                 }
                 params.enableHidden = true;
             }
+            else if (option.equals("latency-file")) {
+                if (value == null) {
+                    System.err.println("The \"latency-file\" option requires a value.");
+                    System.exit(1);
+                }
+                params.latencyFile = value;
+            }
+            else if (option.equals("throughput")) {
+                if (value != null) {
+                    System.err.println("The \"throughput\" option does not take a value: \"" + arg + "\"");
+                    System.exit(1);
+                }
+                params.throughput = true;
+            }
+            else if (option.equals("threads")) {
+                if (value == null) {
+                    System.err.println("The \"threads\" option requires a value.");
+                    System.exit(1);
+                }
+                try {
+                    params.maxThreads = Integer.parseInt(value);
+                } catch (NumberFormatException ex) {
+                    System.err.println("Invalid value for \"threads\" option: \"" + value + "\"");
+                    System.exit(1);
+                }
+                if (params.maxThreads < 1) {
+                    System.err.println("Invalid value for \"threads\" option: \"" + value + "\"");
+                    System.exit(1);
+                }
+            }
             else if (option.equals("help")) {
                 if (value != null) {
                     System.err.println("The \"help\" option does not take a value: \"" + arg + "\"");
@@ -265,6 +304,10 @@ abstract class BenchmarkBase
                 System.out.println("  -include=impl1,impl2,impl3,...");
                 System.out.println("  -exclude=impl1,impl2,impl3,...");
                 System.out.println("  -hidden               (enable \"hidden\" serializers)");
+                System.out.println("  -latency-file=path    (write latency percentiles as CSV; they come from separate");
+                System.out.println("                         per-op timed passes, not the ones averaged)");
+                System.out.println("  -throughput           (measure multi-threaded round trips/sec instead of timings)");
+                System.out.println("  -threads=n            [default=" + Runtime.getRuntime().availableProcessors() + "] (max. threads for -throughput)");
                 System.out.println("  -help");
                 System.out.println();
                 System.out.println("Example: run  -chart -include=protobuf,thrift  data/media.1.json");
@@ -325,14 +368,20 @@ abstract class BenchmarkBase
         StringWriter errors = new StringWriter();
         PrintWriter errorsPW = new PrintWriter(errors);
         try {
-            EnumMap<measurements, Map<String, Double>> values = runMeasurements(errorsPW, params, matchingEntries, testData,
-                    testCreate,
-                    testSerialize, 
-                    testDeserialize
-            );
-                    
-            if (params.printChart) {
-                printImages(values);
+            if (params.throughput) {
+                runThroughput(errorsPW, params, matchingEntries, testData,
+                        testSerialize,
+                        testDeserialize);
+            } else {
+                EnumMap<measurements, Map<String, Double>> values = runMeasurements(errorsPW, params, matchingEntries, testData,
+                        testCreate,
+                        testSerialize, 
+                        testDeserialize
+                );
+
+                if (params.printChart) {
+                    printImages(values);
+                }
             }
         }
         catch (Exception ex) {
@@ -490,17 +539,21 @@ abstract class BenchmarkBase
                         System.out.println("[done]");
                 }
 
-                System.out.printf("%-34s %6s %7s %7s %7s %6s %5s\n",
+                System.out.printf("%-34s %6s %7s %7s %7s %6s %5s %8s %8s\n",
                         params.printChart ? "\npre." : "",
                         "create",
                         "ser",
                         "deser",
                         "total",
                         "size",
-                        "+dfl");
+                        "+dfl",
+                        "ser-a",
+                        "deser-a");
                 EnumMap<measurements, Map<String, Double>> values = new EnumMap<measurements, Map<String, Double>>(measurements.class);
                 for (measurements m : measurements.values())
                         values.put(m, new HashMap<String, Double>());
+                // per serializer: create, ser, deser latencies
+                Map<String, Histogram[]> latencies = new LinkedHashMap<String, Histogram[]>();
 
                 // Actual tests.
                 for (TestGroup.Entry<J,Object> entry : groups)
@@ -514,36 +567,50 @@ abstract class BenchmarkBase
                                  */
                                 warmTest(runner, params.warmupTime/3, testCreate);
 
+                                Histogram latencyCreate = TestCaseRunner.newLatencyHistogram();
+                                Histogram latencySerialize = TestCaseRunner.newLatencyHistogram();
+                                Histogram latencyDeserialize = TestCaseRunner.newLatencyHistogram();
+
                                 doGc();
                                 // ruediger: turns out startup/init time is pretty equal for all tests. 
                                 // No need to spend too much time here
-                                double timeCreate = runner.runWithTimeMeasurement(params.testRunMillis / 3, testCreate, params.iterations); 
+                                double timeCreate = runner.runWithTimeMeasurement(params.testRunMillis / 3, testCreate, params.iterations, latencyCreate);
 
                                 warmTest(runner, params.warmupTime, testSerialize);
 
                                 doGc();
-                                double timeSerialize = runner.runWithTimeMeasurement(params.testRunMillis, testSerialize, params.iterations);
+                                double timeSerialize = runner.runWithTimeMeasurement(params.testRunMillis, testSerialize, params.iterations, latencySerialize);
                             
                                 doGc();
-                                double timeDeserialize = runner.runWithTimeMeasurement(params.testRunMillis, testDeserialize, params.iterations);
+                                double timeDeserialize = runner.runWithTimeMeasurement(params.testRunMillis, testDeserialize, params.iterations, latencyDeserialize);
 
                                 double totalTime = timeSerialize + timeDeserialize;
 
+                                // bytes allocated per operation; -1 where the platform can't tell
+                                double allocSerialize = runner.runWithAllocationMeasurement(testSerialize, params.iterations);
+                                double allocDeserialize = runner.runWithAllocationMeasurement(testDeserialize, params.iterations);
+
                                 byte[] array = serializeForSize(entry.transformer, entry.serializer, value);
                                 byte[] compressDeflate = compressDeflate(array);
 
-                                System.out.printf("%-34s %6.0f %7.0f %7.0f %7.0f %6d %5d\n",
+                                System.out.printf("%-34s %6.0f %7.0f %7.0f %7.0f %6d %5d %8.0f %8.0f\n",
                                         name,
                                         timeCreate,
                                         timeSerialize,
                                         timeDeserialize,
                                         totalTime,
                                         array.length,
-                                        compressDeflate.length);
+                                        compressDeflate.length,
+                                        allocSerialize,
+                                        allocDeserialize);
 
                                 addValue(values, name, timeCreate, timeSerialize, 
                                         timeDeserialize, totalTime,
-                                        array.length, compressDeflate.length);
+                                        array.length, compressDeflate.length,
+                                        allocSerialize, allocDeserialize);
+                                values.get(measurements.p99Serialize).put(name, (double) latencySerialize.getValueAtPercentile(99.0));
+                                values.get(measurements.p99Deserialize).put(name, (double) latencyDeserialize.getValueAtPercentile(99.0));
+                                latencies.put(name, new Histogram[] { latencyCreate, latencySerialize, latencyDeserialize });
                         }
                         catch (Exception ex) {
                                 System.out.println("ERROR: \"" + name + "\" crashed during benchmarking.");
@@ -553,9 +620,148 @@ abstract class BenchmarkBase
                         }
                 }
 
+                printLatencies(latencies);
+                if (params.latencyFile != null) {
+                        writeLatencies(new File(params.latencyFile), latencies);
+                }
                 return values;
     }
 
+    // ------------------------------------------------------------------------------------
+    // Helper methods for latency percentiles
+    // ------------------------------------------------------------------------------------
+
+    protected static final String[] LATENCY_OPERATIONS = { "create", "ser", "deser" };
+    protected static final double[] LATENCY_PERCENTILES = { 50.0, 90.0, 99.0, 99.9 };
+
+    protected static void printLatencies(Map<String, Histogram[]> latencies)
+    {
+        System.out.println();
+        System.out.printf("%-34s %6s %9s %9s %9s %9s %9s\n",
+                "latency (nanos)", "op", "p50", "p90", "p99", "p99.9", "max");
+        for (Map.Entry<String, Histogram[]> entry : latencies.entrySet()) {
+            for (int op = 0; op < LATENCY_OPERATIONS.length; ++op) {
+                Histogram h = entry.getValue()[op];
+                System.out.printf("%-34s %6s %9d %9d %9d %9d %9d\n",
+                        entry.getKey(),
+                        LATENCY_OPERATIONS[op],
+                        h.getValueAtPercentile(LATENCY_PERCENTILES[0]),
+                        h.getValueAtPercentile(LATENCY_PERCENTILES[1]),
+                        h.getValueAtPercentile(LATENCY_PERCENTILES[2]),
+                        h.getValueAtPercentile(LATENCY_PERCENTILES[3]),
+                        h.getMaxValue());
+            }
+        }
+    }
+
+    protected static void writeLatencies(File file, Map<String, Histogram[]> latencies) throws IOException
+    {
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.println("serializer,op,count,mean,p50,p90,p99,p99.9,max");
+            for (Map.Entry<String, Histogram[]> entry : latencies.entrySet()) {
+                for (int op = 0; op < LATENCY_OPERATIONS.length; ++op) {
+                    Histogram h = entry.getValue()[op];
+                    out.print(entry.getKey());
+                    out.print(',');
+                    out.print(LATENCY_OPERATIONS[op]);
+                    out.print(',');
+                    out.print(h.getTotalCount());
+                    out.print(',');
+                    out.print(Math.round(h.getMean()));
+                    for (double percentile : LATENCY_PERCENTILES) {
+                        out.print(',');
+                        out.print(h.getValueAtPercentile(percentile));
+                    }
+                    out.print(',');
+                    out.println(h.getMaxValue());
+                }
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Multi-threaded mode: for every serializer, runs serialize/deserialize round trips
+     * on 1, 2, 4, ... up to <code>params.maxThreads</code> threads and prints aggregate
+     * round trips per second, plus how that scales relative to a single thread.
+     */
+    protected <J> void runThroughput(PrintWriter errors,
+            Params params, Iterable<TestGroup.Entry<J,Object>> groups, J value,
+            TestCase testSerialize,
+            TestCase testDeserialize
+    ) throws Exception
+    {
+                System.out.println("Checking correctness...");
+                for (TestGroup.Entry<J,Object> entry : groups)
+                {
+                        checkCorrectness(errors, entry.transformer, entry.serializer, value);
+                }
+                System.out.println("[done]");
+
+                ArrayList<Integer> threadCounts = new ArrayList<Integer>();
+                for (int threads = 1; threads < params.maxThreads; threads *= 2) {
+                        threadCounts.add(threads);
+                }
+                threadCounts.add(params.maxThreads);
+
+                StringBuilder header = new StringBuilder(String.format("%-34s", "round trips/s"));
+                for (int threads : threadCounts) {
+                        header.append(String.format(" %9s", threads + " thr"));
+                }
+                header.append(String.format(" %8s", "scaling"));
+                System.out.println(header);
+
+                ThroughputRunner.RoundTripCheck<J> roundTripCheck = new ThroughputRunner.RoundTripCheck<J>() {
+                        public String check(Transformer<J,Object> transformer, Serializer<Object> serializer, J input)
+                                throws Exception
+                        {
+                                StringWriter sw = new StringWriter();
+                                PrintWriter pw = new PrintWriter(sw);
+                                checkCorrectness(pw, transformer, serializer, input);
+                                pw.flush();
+                                return sw.getBuffer().length() == 0 ? null : sw.toString();
+                        }
+                };
+
+                for (TestGroup.Entry<J,Object> entry : groups)
+                {
+                        TestCaseRunner<J> runner = new TestCaseRunner<J>(entry.transformer, entry.serializer, value);
+                        ThroughputRunner<J> throughputRunner = new ThroughputRunner<J>(entry.transformer, entry.serializer, value);
+                        String name = entry.serializer.getName();
+                        try {
+                                warmTest(runner, params.warmupTime, testSerialize);
+                                warmTest(runner, params.warmupTime, testDeserialize);
+
+                                StringBuilder line = new StringBuilder(String.format("%-34s", name));
+                                double singleThreaded = 0;
+                                double opsPerSec = 0;
+                                for (int threads : threadCounts) {
+                                        doGc();
+                                        opsPerSec = throughputRunner.run(threads, params.testRunMillis,
+                                                testSerialize, testDeserialize, params.iterations, roundTripCheck);
+                                        if (threads == 1) {
+                                                singleThreaded = opsPerSec;
+                                        }
+                                        line.append(String.format(" %9.0f", opsPerSec));
+                                }
+                                line.append(String.format(" %7.2fx", opsPerSec / singleThreaded));
+                                System.out.println(line);
+
+                                // shared state corrupted by concurrent use shows up here
+                                checkCorrectness(errors, entry.transformer, entry.serializer, value);
+                        }
+                        catch (Exception ex) {
+                                System.out.println("ERROR: \"" + name + "\" crashed during throughput benchmarking.");
+                                errors.println(ERROR_DIVIDER);
+                                errors.println("\"" + name + "\" crashed during throughput benchmarking.");
+                                ex.printStackTrace(errors);
+                        }
+                }
+    }
+
     protected abstract <J> byte[] serializeForSize(Transformer<J,Object> tranformer, Serializer<Object> serializer, J value)
         throws Exception;
     
@@ -566,7 +772,8 @@ abstract class BenchmarkBase
             double timeSerialize,
             double timeDeserialize,
             double totalTime,
-            double length, double lengthDeflate)
+            double length, double lengthDeflate,
+            double allocSerialize, double allocDeserialize)
     {
         values.get(measurements.timeSerialize).put(name, timeSerialize);
         values.get(measurements.timeDeserialize).put(name, timeDeserialize);
@@ -574,6 +781,10 @@ abstract class BenchmarkBase
         values.get(measurements.length).put(name, length);
         values.get(measurements.lengthDeflate).put(name, lengthDeflate);
         values.get(measurements.timeCreate).put(name, timeCreate);
+        if (allocSerialize >= 0) {
+            values.get(measurements.allocSerialize).put(name, allocSerialize);
+            values.get(measurements.allocDeserialize).put(name, allocDeserialize);
+        }
     }
     
     // ------------------------------------------------------------------------------------
@@ -1,10 +1,14 @@
 package serializers;
 
+import serializers.capnp.Capnproto;
 import serializers.cks.CksText;
 import serializers.flatbuffers.Flatbuffers;
 import serializers.jackson.JacksonJsonDatabind;
 import serializers.jackson.JacksonJsonManual;
+import serializers.jackson.JacksonJsonManualCol;
 import serializers.protobuf.Protobuf;
+import serializers.protobuf.ProtobufLite;
+import serializers.protobuf.ProtobufManual;
 
 /**
  * Full test of various codecs, using a single <code>MediaItem</code>
@@ -17,12 +21,18 @@ public class BenchmarkRunner extends MediaItemBenchmark
 
         // Binary formats, generic: protobuf, thrift, avro, CKS, msgpack, CBOR
         Protobuf.register(groups);
+        ProtobufLite.register(groups);
+        ProtobufManual.register(groups);
         Thrift.register(groups);
         Flatbuffers.register(groups);
-        //Capnproto.register(groups);
+        Capnproto.register(groups);
+
+        // Hand-written binary codec, plain and with reused output buffers
+        JavaManual.register(groups);
 
         // JSON
         JacksonJsonManual.register(groups);
+        JacksonJsonManualCol.register(groups);
         JacksonJsonDatabind.register(groups);
 
 
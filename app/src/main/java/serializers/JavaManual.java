@@ -17,7 +17,18 @@ import data.media.Pod;
 public final class JavaManual
 {
     public static void register(TestGroups groups) {
-        groups.media.add(JavaBuiltIn.mediaTransformer, new MediaContentSerializer(),
+        groups.media.add(JavaBuiltIn.mediaTransformer, new MediaContentSerializer("java-manual"),
+                new SerFeatures(
+                        SerFormat.BINARY,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                )
+        );
+        // same codec, output stream reused per thread instead of allocated per message
+        MediaContentSerializer pooled = new MediaContentSerializer("java-manual/pooled");
+        pooled.setOutputBuffers(OutputBuffers.THREAD_LOCAL);
+        groups.media.add(JavaBuiltIn.mediaTransformer, pooled,
                 new SerFeatures(
                         SerFormat.BINARY,
                         SerGraph.FLAT_TREE,
@@ -32,9 +43,11 @@ public final class JavaManual
 
     private static final class MediaContentSerializer extends Serializer<MediaContent>
     {
-        public MediaContentSerializer() { super(); }
+        private final String name;
+
+        public MediaContentSerializer(String name) { this.name = name; }
 
-        public String getName() { return "java-manual"; }
+        public String getName() { return name; }
 
         public MediaContent deserialize(byte[] array) throws IOException {
             return readMediaContent(new DataInputStream(new ByteArrayInputStream(array)));
@@ -4,6 +4,8 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 
+import org.HdrHistogram.Histogram;
+
 /**
  * Intermediate base class for tests that use a single <code>MediaItem</code>
  * as data.
@@ -51,20 +53,36 @@ public abstract class MediaItemBenchmark extends BenchmarkBase
     
     protected final TestCase Create = new TestCase()
     {
-            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                    Histogram latencies, long[] allocated) throws Exception
             {
+                    long allocStart = allocationMark(allocated);
                     long start = System.nanoTime();
-                    for (int i = 0; i < iterations; i++)
-                    {
-                            transformer.forward(value);
+                    if (latencies == null) {
+                        for (int i = 0; i < iterations; i++)
+                        {
+                                transformer.forward(value);
+                        }
+                    } else {
+                        long opStart = start;
+                        for (int i = 0; i < iterations; i++)
+                        {
+                                transformer.forward(value);
+                                long opEnd = System.nanoTime();
+                                latencies.recordValue(opEnd - opStart);
+                                opStart = opEnd;
+                        }
                     }
-                    return iterationTime(System.nanoTime() - start, iterations);
+                    double time = iterationTime(System.nanoTime() - start, iterations);
+                    recordAllocations(allocated, allocStart);
+                    return time;
             }
     };
 
     protected final TestCase Serialize = new TestCase()
     {
-            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                    Histogram latencies, long[] allocated) throws Exception
             {
                 /* 16-Nov-2012, tatu: Time to serialize should consider time to
                  *   convert from POJO to intermediate representation, because
@@ -73,27 +91,56 @@ public abstract class MediaItemBenchmark extends BenchmarkBase
                  *   model usual usage bit more accurately.
                  */
                 Object[] objects = new Object[iterations];
+                long allocStart = allocationMark(allocated);
                 long start = System.nanoTime();
-                for (int i = 0; i < iterations; i++) {
-                    Object input = transformer.forward(value);
-                    objects[i] = serializer.serialize(input);
+                if (latencies == null) {
+                    for (int i = 0; i < iterations; i++) {
+                        Object input = transformer.forward(value);
+                        objects[i] = serializer.serialize(input);
+                    }
+                } else {
+                    long opStart = start;
+                    for (int i = 0; i < iterations; i++) {
+                        Object input = transformer.forward(value);
+                        objects[i] = serializer.serialize(input);
+                        long opEnd = System.nanoTime();
+                        latencies.recordValue(opEnd - opStart);
+                        opStart = opEnd;
+                    }
                 }
-                return iterationTime(System.nanoTime() - start, iterations);
+                double time = iterationTime(System.nanoTime() - start, iterations);
+                recordAllocations(allocated, allocStart);
+                return time;
             }
     };
 
     protected final TestCase Deserialize = new TestCase()
     {
-            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+            public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                    Histogram latencies, long[] allocated) throws Exception
             {
                     byte[] array = serializer.serialize(transformer.forward(value));
-                    long start = System.nanoTime();
                     Object[] objects = new Object[iterations];
-                    for (int i = 0; i < iterations; i++)
-                    {
-                        objects[i] = transformer.reverse(serializer.deserialize(array));
+                    long allocStart = allocationMark(allocated);
+                    long start = System.nanoTime();
+                    if (latencies == null) {
+                        for (int i = 0; i < iterations; i++)
+                        {
+                            objects[i] = transformer.reverse(serializer.deserialize(array));
+                        }
+                    } else {
+                        long opStart = start;
+                        for (int i = 0; i < iterations; i++)
+                        {
+                            objects[i] = transformer.reverse(serializer.deserialize(array));
+                            long opEnd = System.nanoTime();
+                            latencies.recordValue(opEnd - opStart);
+                            opStart = opEnd;
+                        }
                     }
-                    return iterationTime(System.nanoTime() - start, iterations);
+                    double time = iterationTime(System.nanoTime() - start, iterations);
+                    recordAllocations(allocated, allocStart);
+                    return time;
             }
     };
 }
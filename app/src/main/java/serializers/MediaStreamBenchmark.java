@@ -6,9 +6,15 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.PrintWriter;
 
+import org.HdrHistogram.Histogram;
+
+import serializers.capnp.Capnproto;
 import serializers.jackson.JacksonJsonDatabind;
 import serializers.jackson.JacksonJsonManual;
+import serializers.jackson.JacksonJsonManualCol;
 import serializers.protobuf.Protobuf;
+import serializers.protobuf.ProtobufLite;
+import serializers.protobuf.ProtobufManual;
 
 /**
  * Alternative benchmark which uses a sequence of data items for testing,
@@ -32,10 +38,14 @@ public class MediaStreamBenchmark extends BenchmarkBase
 
         // Binary formats, generic: protobuf, thrift, avro, CKS, msgpack
         Protobuf.register(groups);
+        ProtobufLite.register(groups);
+        ProtobufManual.register(groups);
         Thrift.register(groups);
+        Capnproto.register(groups);
 
         // JSON
         JacksonJsonManual.register(groups);
+        JacksonJsonManualCol.register(groups);
         JacksonJsonDatabind.register(groups);
         //JacksonWithAfterburner.registerJSON(groups); // databind with bytecode generation (faster)
 
@@ -84,22 +94,37 @@ public class MediaStreamBenchmark extends BenchmarkBase
     
     protected final TestCase Create = new TestCase()
     {
-        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                Histogram latencies, long[] allocated) throws Exception
         {
             @SuppressWarnings("unchecked")
             J[] src = (J[]) value;
             Object[] result = new Object[src.length];
+            long allocStart = allocationMark(allocated);
             long start = System.nanoTime();
-            for (int i = 0; i < iterations; i++) {
-                transformer.forward(src, result);
+            if (latencies == null) {
+                for (int i = 0; i < iterations; i++) {
+                    transformer.forward(src, result);
+                }
+            } else {
+                long opStart = start;
+                for (int i = 0; i < iterations; i++) {
+                    transformer.forward(src, result);
+                    long opEnd = System.nanoTime();
+                    latencies.recordValue(opEnd - opStart);
+                    opStart = opEnd;
+                }
             }
-            return iterationTime(System.nanoTime() - start, iterations);
+            double time = iterationTime(System.nanoTime() - start, iterations);
+            recordAllocations(allocated, allocStart);
+            return time;
         }
     };
 
     protected final TestCase Serialize = new TestCase()
     {
-        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                Histogram latencies, long[] allocated) throws Exception
         {
             @SuppressWarnings("unchecked")
             J[] src = (J[]) value;
@@ -108,27 +133,55 @@ public class MediaStreamBenchmark extends BenchmarkBase
             	objects[i] = transformer.forwardAll(src);
             }
             ByteArrayOutputStream out = serializer.outputStreamForList(src);
+            long allocStart = allocationMark(allocated);
             long start = System.nanoTime();
-            for (int i = 0; i < iterations; i++) {
-                serializer.serializeItems(objects[i], out);
-                out.reset();
+            if (latencies == null) {
+                for (int i = 0; i < iterations; i++) {
+                    serializer.serializeItems(objects[i], out);
+                    out.reset();
+                }
+            } else {
+                long opStart = start;
+                for (int i = 0; i < iterations; i++) {
+                    serializer.serializeItems(objects[i], out);
+                    out.reset();
+                    long opEnd = System.nanoTime();
+                    latencies.recordValue(opEnd - opStart);
+                    opStart = opEnd;
+                }
             }
-            return iterationTime(System.nanoTime() - start, iterations);
+            double time = iterationTime(System.nanoTime() - start, iterations);
+            recordAllocations(allocated, allocStart);
+            return time;
         }
     };
 
     protected final TestCase Deserialize = new TestCase()
     {
-        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+        public <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+                Histogram latencies, long[] allocated) throws Exception
         {
             @SuppressWarnings("unchecked")
             J[] src = (J[]) value;
             byte[] bytes = serializer.serializeAsBytes(transformer.forwardAll(src));
+            long allocStart = allocationMark(allocated);
             long start = System.nanoTime();
-            for (int i = 0; i < iterations; i++) {
-                serializer.deserializeItems(new ByteArrayInputStream(bytes), src.length);
+            if (latencies == null) {
+                for (int i = 0; i < iterations; i++) {
+                    serializer.deserializeItems(new ByteArrayInputStream(bytes), src.length);
+                }
+            } else {
+                long opStart = start;
+                for (int i = 0; i < iterations; i++) {
+                    serializer.deserializeItems(new ByteArrayInputStream(bytes), src.length);
+                    long opEnd = System.nanoTime();
+                    latencies.recordValue(opEnd - opStart);
+                    opStart = opEnd;
+                }
             }
-            return iterationTime(System.nanoTime() - start, iterations);
+            double time = iterationTime(System.nanoTime() - start, iterations);
+            recordAllocations(allocated, allocStart);
+            return time;
         }
     };
 }
@@ -0,0 +1,59 @@
+package serializers;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Where {@link Serializer#outputStream} gets its buffer from. {@link #ALLOCATE} (the
+ * default) creates a new stream per call; {@link #THREAD_LOCAL} hands out one stream
+ * per thread, reset, so its grown backing array is kept between messages.
+ *<p>
+ * A reused stream is only valid until the next <code>outputStream</code> call on the
+ * same thread, which is fine for serializers that finish with <code>toByteArray()</code>.
+ */
+public abstract class OutputBuffers
+{
+    /**
+     * Streams that grew past this are dropped rather than kept for the next message.
+     */
+    public static final int MAX_RETAINED_SIZE = 1024 * 1024;
+
+    public static final OutputBuffers ALLOCATE = new OutputBuffers() {
+        @Override
+        public ByteArrayOutputStream get(int initialSize) {
+            return new ByteArrayOutputStream(initialSize);
+        }
+    };
+
+    public static final OutputBuffers THREAD_LOCAL = new OutputBuffers() {
+        private final ThreadLocal<ReusableOutputStream> streams = new ThreadLocal<ReusableOutputStream>();
+
+        @Override
+        public ByteArrayOutputStream get(int initialSize) {
+            ReusableOutputStream out = streams.get();
+            if (out == null || out.capacity() > MAX_RETAINED_SIZE) {
+                out = new ReusableOutputStream(initialSize);
+                streams.set(out);
+            } else {
+                out.reset();
+            }
+            return out;
+        }
+    };
+
+    /**
+     * @return An empty stream with room for at least <code>initialSize</code> bytes
+     *   if newly created
+     */
+    public abstract ByteArrayOutputStream get(int initialSize);
+
+    private static final class ReusableOutputStream extends ByteArrayOutputStream
+    {
+        ReusableOutputStream(int size) {
+            super(size);
+        }
+
+        int capacity() {
+            return buf.length;
+        }
+    }
+}
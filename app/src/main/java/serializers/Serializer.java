@@ -1,6 +1,7 @@
 package serializers;
 
 import java.io.*;
+import java.nio.ByteBuffer;
 
 public abstract class Serializer<S>
 {
@@ -16,11 +17,53 @@ public abstract class Serializer<S>
  	public abstract String getName();
     
     SerFeatures features = new SerFeatures(); // ruediger: everything misc by default.
+
+    OutputBuffers outputBuffers = OutputBuffers.ALLOCATE;
     
 	public ByteArrayOutputStream outputStream (S content) {
-		return new ByteArrayOutputStream(BUFFER_SIZE);
+		return outputBuffers.get(BUFFER_SIZE);
 	}
 
+    public OutputBuffers getOutputBuffers() {
+        return outputBuffers;
+    }
+
+    /**
+     * Only serializers that are done with the stream from {@link #outputStream}
+     * before calling it again can use {@link OutputBuffers#THREAD_LOCAL}.
+     */
+    public void setOutputBuffers(OutputBuffers outputBuffers) {
+        this.outputBuffers = outputBuffers;
+    }
+
+    // ByteBuffer interfaces: defaults go through the byte[] methods, serializers
+    // that can read or write a buffer in place override them
+
+    /**
+     * Writes <code>content</code> at the position of <code>out</code> and advances
+     * the position past it.
+     */
+    public void serializeInto(S content, ByteBuffer out) throws Exception {
+        out.put(serialize(content));
+    }
+
+    /**
+     * Reads one message starting at the position of <code>in</code> and advances the
+     * position past it. The result may keep referring to <code>in</code>.
+     */
+    public S deserialize(ByteBuffer in) throws Exception {
+        byte[] array;
+        if (in.hasArray() && in.arrayOffset() == 0 && in.position() == 0
+                && in.remaining() == in.array().length) {
+            array = in.array();
+        } else {
+            array = new byte[in.remaining()];
+            in.duplicate().get(array);
+        }
+        in.position(in.limit());
+        return deserialize(array);
+    }
+
     public SerFeatures getFeatures() {
         return features;
     }
@@ -79,6 +79,11 @@ public class StatsCruncher {
             res.setTotal(Integer.parseInt(split[4].trim()));
             res.setSize(Integer.parseInt(split[5].trim()));
             res.setCompressedSize(Integer.parseInt(split[6].trim()));
+            // allocation columns are missing in stats from older runs
+            if (split.length > 8) {
+                res.setSerAlloc(Integer.parseInt(split[7].trim()));
+                res.setDeserAlloc(Integer.parseInt(split[8].trim()));
+            }
             mappedResults.put(res.getName(), res);
             res.setFeatures(mappedFeatures.get(res.getName()));
             results.add(res);
@@ -214,7 +219,7 @@ public class StatsCruncher {
     }
 
     String dump(List<TestCaseResult> total) {
-        String res = "\n<pre>                                   create     ser   deser   total   size  +dfl\n";
+        String res = "\n<pre>                                   create     ser   deser   total   size  +dfl    ser-a  deser-a\n";
         for (int i = 0; i < total.size(); i++) {
             TestCaseResult testCaseResult = total.get(i);
             res+=testCaseResult.toString()+"\n";
@@ -232,9 +237,20 @@ public class StatsCruncher {
     }
 
     String generateResultSection(List<TestCaseResult> testCaseResults, String title, String desc) {
+        String allocChart = "";
+        List<TestCaseResult> measuredAlloc = new ArrayList<TestCaseResult>();
+        for (TestCaseResult testCaseResult : testCaseResults) {
+            if (testCaseResult.getSerAlloc() >= 0) {
+                measuredAlloc.add(testCaseResult);
+            }
+        }
+        if (!measuredAlloc.isEmpty()) {
+            allocChart = generateChart(sort("totalAlloc",measuredAlloc),"Ser Alloc+Deser Alloc (bytes/op)","serAlloc","totalAlloc")+"\n<br clear='all' />";
+        }
         return  "\n\n<h3>"+title+"</h3>\n"+desc+"\n"+
                 generateChart(testCaseResults,"Ser Time+Deser Time (ns)","ser","total")+"\n<br clear='all' />"+
                 generateChart( sort("size",testCaseResults),"Size, Compressed size [light] in bytes","compressedSize","size")+"\n<br clear='all' />"+
+                allocChart+
                 dump(testCaseResults);
     }
 
@@ -423,6 +439,10 @@ public class StatsCruncher {
         int total;
         int size;
         int compressedSize;
+        // bytes allocated per operation, -1 if not measured
+        int serAlloc = -1;
+        int deserAlloc = -1;
+        int totalAlloc = -1;
         SerFeatures features = new SerFeatures();
 
         TestCaseResult() {
@@ -462,14 +482,16 @@ public class StatsCruncher {
         public String toString() {
             @SuppressWarnings("resource")
             Formatter format = new Formatter().format(
-                    "%-34s %6d %7d %7d %7d %6d %5d",
+                    "%-34s %6d %7d %7d %7d %6d %5d %8d %8d",
                     name,
                     create,
                     ser,
                     deser,
                     total,
                     size,
-                    compressedSize);
+                    compressedSize,
+                    serAlloc,
+                    deserAlloc);
             return format.toString();
         }
         
@@ -529,6 +551,32 @@ public class StatsCruncher {
             this.compressedSize = compressedSize;
         }
 
+        public int getSerAlloc() {
+            return serAlloc;
+        }
+
+        public void setSerAlloc(int serAlloc) {
+            this.serAlloc = serAlloc;
+            updateTotalAlloc();
+        }
+
+        public int getDeserAlloc() {
+            return deserAlloc;
+        }
+
+        public void setDeserAlloc(int deserAlloc) {
+            this.deserAlloc = deserAlloc;
+            updateTotalAlloc();
+        }
+
+        public int getTotalAlloc() {
+            return totalAlloc;
+        }
+
+        private void updateTotalAlloc() {
+            totalAlloc = (serAlloc < 0 || deserAlloc < 0) ? -1 : serAlloc + deserAlloc;
+        }
+
     }
 
 }
@@ -1,6 +1,40 @@
 package serializers;
 
+import org.HdrHistogram.Histogram;
+
 public abstract class TestCase
 {
-    public abstract <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception;
+    /**
+     * @param latencies If not null, the time of every single iteration is recorded here (in nanos).
+     *   Taking the time per iteration adds to the average returned, so runs that should
+     *   give a representative average pass null
+     * @param allocated If not null, <code>allocated[0]</code> receives the bytes allocated by the
+     *   measured loop, without the setup done before it
+     * @return Average time per iteration, in nanos
+     */
+    public abstract <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+            Histogram latencies, long[] allocated) throws Exception;
+
+    public final <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations,
+            Histogram latencies) throws Exception
+    {
+        return run(transformer, serializer, value, iterations, latencies, null);
+    }
+
+    public final <J> double run(Transformer<J,Object> transformer, Serializer<Object> serializer, J value, int iterations) throws Exception
+    {
+        return run(transformer, serializer, value, iterations, null, null);
+    }
+
+    protected static long allocationMark(long[] allocated)
+    {
+        return allocated != null ? AllocationCounter.getInstance().allocatedBytes() : 0L;
+    }
+
+    protected static void recordAllocations(long[] allocated, long mark)
+    {
+        if (allocated != null) {
+            allocated[0] = AllocationCounter.getInstance().allocatedBytes() - mark;
+        }
+    }
 }
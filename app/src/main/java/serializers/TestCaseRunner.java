@@ -1,11 +1,15 @@
 package serializers;
 
-import java.util.Arrays;
+import org.HdrHistogram.Histogram;
 
 public final class TestCaseRunner<J>
 {
-    static double measurementVals[] = new double[1000*1000]; 
-    // because full gc is triggered by main loop, this should move to oldgen 
+    /**
+     * Latencies are recorded in nanos; 3 significant digits keeps the histogram
+     * small while still resolving the p99.9 of sub-microsecond operations.
+     */
+    public static final int LATENCY_SIGNIFICANT_DIGITS = 3;
+
     private final Transformer<J,Object> transformer;
     private final Serializer<Object> serializer;
     private final J value;
@@ -22,7 +26,26 @@ public final class TestCaseRunner<J>
             return tc.run(transformer, serializer, value, iterations);
     }
 
+    public static Histogram newLatencyHistogram()
+    {
+        // auto-resizing, so a stalled iteration can't overflow it
+        return new Histogram(LATENCY_SIGNIFICANT_DIGITS);
+    }
+
     public double runWithTimeMeasurement(int timeMillis, TestCase tc, int iterations) throws Exception
+    {
+        return runWithTimeMeasurement(timeMillis, tc, iterations, newLatencyHistogram());
+    }
+
+    /**
+     * Alternates passes timed as a whole, which give the average, with passes timed per
+     * iteration, which fill <code>latencies</code>; the <code>nanoTime</code> call per
+     * iteration of the latter stays out of the average.
+     *
+     * @param latencies Receives the time of every iteration of the per-iteration passes
+     * @return Average time per iteration
+     */
+    public double runWithTimeMeasurement(int timeMillis, TestCase tc, int iterations, Histogram latencies) throws Exception
     {
         // ruediger: 
         // 1. made this also time based (like warmup). 
@@ -39,6 +62,9 @@ public final class TestCaseRunner<J>
         //    We can do this when running each serializer isolated in an own VM.
         long start = System.currentTimeMillis();
         
+        // 3. per-iteration times go into an HdrHistogram instead of a fixed-size array,
+        //    so long runs can't overflow it and tail latencies get reported too. They
+        //    come from a separate pass, as timing every iteration adds to the average.
         double sumTime = 0;
         int count = 0;
         System.err.println("test-time "+timeMillis+" iteration "+iterations);
@@ -46,20 +72,45 @@ public final class TestCaseRunner<J>
         {
             double time = tc.run(transformer, serializer, value, iterations);
             sumTime += time;
-            measurementVals[count] = time;
             count++;
+            tc.run(transformer, serializer, value, iterations, latencies);
         }
         double avg = sumTime / count;
-        Arrays.sort(measurementVals, 0, count);
+        double median = latencies.getValueAtPercentile(50.0);
         System.err.println("-----------------------------------------------------------------------------");
         System.err.println(serializer.getName());
-        System.err.println("min:" + measurementVals[0]);
-        System.err.println("1/4:"+measurementVals[count/4]);
-        System.err.println("1/2:"+measurementVals[count/2]);
-        System.err.println("3/4:"+measurementVals[count/4*3]);
-        System.err.println("max:"+measurementVals[count-1]);
-        System.err.println("average:"+ avg +"ms deviation:"+(avg-measurementVals[count/2])+"ms");
+        System.err.println("min:" + latencies.getMinValue());
+        System.err.println("1/4:"+latencies.getValueAtPercentile(25.0));
+        System.err.println("1/2:"+median);
+        System.err.println("3/4:"+latencies.getValueAtPercentile(75.0));
+        System.err.println("max:"+latencies.getMaxValue());
+        System.err.println("average:"+ avg +"ns deviation:"+(avg-median)+"ns");
         System.err.println("-----------------------------------------------------------------------------");
         return avg;
     }
+
+    /**
+     * Measures bytes allocated per iteration of the given test case, or returns
+     * {@link AllocationCounter#NOT_SUPPORTED} if the platform can't count allocations.
+     *<p>
+     * Only the measured loop of the test case is counted, not the setup before it
+     * (result arrays, the input message for deserialization, the forwarded items of
+     * stream tests). The loop is run with <code>iterations</code> and
+     * <code>2*iterations</code> and only the difference is used, so that one-time costs
+     * inside it (lazy initialization, buffers grown on first use) drop out as well.
+     */
+    public double runWithAllocationMeasurement(TestCase tc, int iterations) throws Exception
+    {
+        if (!AllocationCounter.getInstance().isSupported()) {
+            return AllocationCounter.NOT_SUPPORTED;
+        }
+        long[] allocated = new long[1];
+        tc.run(transformer, serializer, value, iterations, null, allocated);
+        long single = allocated[0];
+
+        tc.run(transformer, serializer, value, 2 * iterations, null, allocated);
+        long twice = allocated[0];
+
+        return Math.max(0, twice - single) / (double) iterations;
+    }
 }
@@ -1,10 +1,14 @@
 package serializers;
 
+import org.apache.thrift.TByteArrayOutputStream;
 import org.apache.thrift.TDeserializer;
 import org.apache.thrift.TSerializer;
 import org.apache.thrift.protocol.TBinaryProtocol;
 import org.apache.thrift.protocol.TCompactProtocol;
+import org.apache.thrift.protocol.TProtocol;
 import org.apache.thrift.protocol.TProtocolFactory;
+import org.apache.thrift.transport.TIOStreamTransport;
+import org.apache.thrift.transport.TMemoryInputTransport;
 
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
@@ -41,6 +45,22 @@ public class Thrift
                         SerClass.CLASSES_KNOWN,
                         ""
                 )
+        );
+		groups.media.add(mediaTransformer, new MediaSerializer(ProtocolSpec.DefaultBinary, true),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.CLASSES_KNOWN,
+                        ""
+                )
+        );
+		groups.media.add(mediaTransformer, new MediaSerializer(ProtocolSpec.CompactBinary, true),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.CLASSES_KNOWN,
+                        ""
+                )
         );
 	}
 
@@ -62,30 +82,84 @@ public class Thrift
 		public static final ProtocolSpec CompactBinary = new ProtocolSpec(new TCompactProtocol.Factory(), "-compact");
 	}
 
+	/**
+	 * Transports and protocols of one thread, reset between messages instead
+	 * of being rebuilt by a new <code>TSerializer</code>/<code>TDeserializer</code>.
+	 */
+	static final class ProtocolPair
+	{
+		final TByteArrayOutputStream out = new TByteArrayOutputStream(Serializer.BUFFER_SIZE);
+		final TProtocol outProtocol;
+		final TMemoryInputTransport in = new TMemoryInputTransport();
+		final TProtocol inProtocol;
+
+		ProtocolPair(ProtocolSpec spec)
+		{
+			outProtocol = spec.factory.getProtocol(new TIOStreamTransport(out));
+			inProtocol = spec.factory.getProtocol(in);
+		}
+	}
+
 	public static final class MediaSerializer extends Serializer<MediaContent>
 	{
 		private final ProtocolSpec spec;
+		private final ThreadLocal<ProtocolPair> protocols;
 
 		public MediaSerializer(ProtocolSpec spec)
+		{
+			this(spec, false);
+		}
+
+		/**
+		 * @param reuseProtocol Keep one {@link ProtocolPair} per thread rather than
+		 *   creating a serializer (and with it buffer and protocol) per message
+		 */
+		public MediaSerializer(final ProtocolSpec spec, boolean reuseProtocol)
 		{
 			this.spec = spec;
+			if (reuseProtocol) {
+				protocols = new ThreadLocal<ProtocolPair>() {
+					@Override
+					protected ProtocolPair initialValue() { return new ProtocolPair(spec); }
+				};
+			} else {
+				protocols = null;
+			}
 		}
 
 		public MediaContent deserialize(byte[] array) throws Exception
 		{
 			MediaContent content = new MediaContent();
-			new TDeserializer(spec.factory).deserialize(content, array);
+			if (protocols == null) {
+				new TDeserializer(spec.factory).deserialize(content, array);
+				return content;
+			}
+			ProtocolPair p = protocols.get();
+			p.in.reset(array);
+			p.inProtocol.reset();
+			try {
+				content.read(p.inProtocol);
+			} finally {
+				p.in.clear(); // don't hold on to the message
+			}
 			return content;
 		}
 
 		public byte[] serialize(MediaContent content) throws Exception
 		{
-			return new TSerializer(spec.factory).serialize(content);
+			if (protocols == null) {
+				return new TSerializer(spec.factory).serialize(content);
+			}
+			ProtocolPair p = protocols.get();
+			p.out.reset();
+			p.outProtocol.reset();
+			content.write(p.outProtocol);
+			return p.out.toByteArray();
 		}
 
 		public String getName()
 		{
-			return "thrift" + spec.suffix;
+			return "thrift" + spec.suffix + (protocols == null ? "" : "-reuse");
 		}
 
 	        @Override
@@ -0,0 +1,108 @@
+package serializers;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the serialize and deserialize test cases of one serializer from several
+ * threads at once and reports aggregate throughput. Unlike {@link TestCaseRunner}
+ * this makes state shared between calls (cached protocol objects, builders, buffers)
+ * visible: contention shows up as poor scaling, races as crashes or round-trip errors.
+ * Each worker round-trips the input through a {@link RoundTripCheck} after its first
+ * pass, while the first passes of all workers overlap; later races only show up as
+ * crashes, or in a check the caller runs after {@link #run}.
+ */
+public final class ThroughputRunner<J>
+{
+    /**
+     * Round-trips the input on the calling thread.
+     */
+    public interface RoundTripCheck<J>
+    {
+        /**
+         * @return Description of what went wrong, or null if the output matched the input
+         */
+        String check(Transformer<J,Object> transformer, Serializer<Object> serializer, J value) throws Exception;
+    }
+
+    private final Transformer<J,Object> transformer;
+    private final Serializer<Object> serializer;
+    private final J value;
+
+    public ThroughputRunner(Transformer<J,Object> transformer, Serializer<Object> serializer, J value)
+    {
+        this.transformer = transformer;
+        this.serializer = serializer;
+        this.value = value;
+    }
+
+    /**
+     * Each of <code>threads</code> workers alternates <code>iterations</code> serializations
+     * and <code>iterations</code> deserializations until <code>timeMillis</code> have passed,
+     * and fails the run if <code>check</code> reports an error after its first pass.
+     *
+     * @return Aggregate round trips (one serialize plus one deserialize) per second
+     */
+    public double run(int threads, int timeMillis, final TestCase testSerialize, final TestCase testDeserialize,
+            final int iterations, final RoundTripCheck<J> check) throws Exception
+    {
+        final CountDownLatch startSignal = new CountDownLatch(1);
+        final long[] roundTrips = new long[threads];
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        final AtomicBoolean stop = new AtomicBoolean();
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; ++t) {
+            final int index = t;
+            workers[t] = new Thread(serializer.getName() + "-worker-" + t) {
+                @Override
+                public void run() {
+                    try {
+                        startSignal.await();
+                        long count = 0;
+                        boolean checked = false;
+                        while (!stop.get()) {
+                            testSerialize.run(transformer, serializer, value, iterations);
+                            testDeserialize.run(transformer, serializer, value, iterations);
+                            count += iterations;
+                            if (!checked) {
+                                String error = check.check(transformer, serializer, value);
+                                if (error != null) {
+                                    throw new IllegalStateException(getName() + " failed round-trip check: " + error);
+                                }
+                                checked = true;
+                            }
+                        }
+                        roundTrips[index] = count;
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    }
+                }
+            };
+            workers[t].start();
+        }
+
+        long start = System.nanoTime();
+        startSignal.countDown();
+        Thread.sleep(timeMillis);
+        stop.set(true);
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        long elapsed = System.nanoTime() - start;
+
+        Throwable t = failure.get();
+        if (t != null) {
+            if (t instanceof Exception) {
+                throw (Exception) t;
+            }
+            throw new RuntimeException(t);
+        }
+        long total = 0;
+        for (long count : roundTrips) {
+            total += count;
+        }
+        return total * 1000000000.0 / elapsed;
+    }
+}
@@ -12,7 +12,9 @@ import java.util.*;
  */
 public class WriteResultsToJavascript
 {
-    public static final String[] columns = { "create", "ser", "deser", "total", "size", "size-gz" };
+    public static final String[] columns = { "create", "ser", "deser", "total", "size", "size-gz", "ser-alloc", "deser-alloc" };
+    // value used in the allocation columns when the platform couldn't count allocations
+    public static final int NOT_MEASURED = -1;
     public static final int roundTripColumnIndex = 3;
 
     public static void _main(String[] args)
@@ -216,6 +218,8 @@ public class WriteResultsToJavascript
         Set<String> entryNames = new HashSet<String>();
         int lineNumber = 0;
         int tokensPerLine = columns.length + 1;
+        // stats from runs before the allocation columns existed stop after "size-gz"
+        int oldTokensPerLine = tokensPerLine - 2;
         while (true) {
             String line = in.readLine();
             if (line == null) break;
@@ -224,8 +228,9 @@ public class WriteResultsToJavascript
             if (line.length() == 0) continue;  // skip blank lines.
 
             String[] parts = line.split(" +");
-            if (parts.length != tokensPerLine) {
-                throw new InputError(lineNumber, "Expecting " + tokensPerLine + " tokens, got " + parts.length + ".");
+            if (parts.length != tokensPerLine && parts.length != oldTokensPerLine) {
+                throw new InputError(lineNumber, "Expecting " + tokensPerLine + " (or " + oldTokensPerLine
+                        + ") tokens, got " + parts.length + ".");
             }
             String name = parts[0];
 
@@ -239,6 +244,10 @@ public class WriteResultsToJavascript
 
             for (int i = 0; i < columns.length; i++) {
                 int ci = i+1;
+                if (ci >= parts.length) {
+                    entry.results.add(NOT_MEASURED);
+                    continue;
+                }
                 String c = parts[ci];
                 int v;
                 try {
@@ -247,7 +256,7 @@ public class WriteResultsToJavascript
                 catch (NumberFormatException ex) {
                     throw new InputError(lineNumber, "column " + (ci+1) + ": Expecting integer, got \"" + c + "\".");
                 }
-                if (v < 0) {
+                if (v < 0 && v != NOT_MEASURED) {
                     throw new InputError(lineNumber, "column " + (ci+1) + ": Negatives not allowed.");
                 }
                 entry.results.add(v);
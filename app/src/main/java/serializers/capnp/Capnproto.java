@@ -1,25 +1,30 @@
 package serializers.capnp;
 
+import org.capnproto.ArrayInputStream;
+import org.capnproto.ArrayOutputStream;
+import org.capnproto.BufferedInputStreamWrapper;
+import org.capnproto.BuilderArena;
 import org.capnproto.MessageBuilder;
 import org.capnproto.MessageReader;
+import org.capnproto.MessageStreamReader;
+import org.capnproto.PackedInputStream;
+import org.capnproto.ReaderOptions;
 import org.capnproto.Serialize;
+import org.capnproto.SegmentPool;
 import org.capnproto.SerializePacked;
 import org.capnproto.StructList;
 import org.capnproto.Text;
 import org.capnproto.TextList;
 
-import java.io.DataInputStream;
-import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
-import java.nio.channels.ReadableByteChannel;
-import java.nio.channels.WritableByteChannel;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
 
 import data.media.MediaTransformer;
 import serializers.SerClass;
@@ -37,7 +42,21 @@ import serializers.capnp.media.MediaContentHolder;
  */
 public class Capnproto {
     public static void register(TestGroups groups) {
-        groups.media.add(new Transformer(), new PBSerializer(),
+        groups.media.add(new Transformer(), new PBSerializer(false),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                ));
+        groups.media.add(new Transformer(), new PBSerializer(true),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                ));
+        groups.media.add(new Transformer(true), new PBSerializer(false, "capnp/pooled"),
                 new SerFeatures(
                         SerFormat.BIN_CROSSLANG,
                         SerGraph.FLAT_TREE,
@@ -46,104 +65,220 @@ public class Capnproto {
                 ));
     }
 
-    static final class PBSerializer extends Serializer<MediaContentHolder.MediaContent.Reader>
+    /**
+     * Root of a message plus the builder it was built in, if any, so that
+     * serializing a forwarded message writes its segments as they are instead
+     * of copying the root into a new builder first.
+     *<p>
+     * Segments of a pooled message come from the pool of the thread that built
+     * it and only go back there when the message is written on that same thread;
+     * written on another thread they are left to the garbage collector.
+     */
+    public static final class Message
     {
-        public String getName() { return "capnp"; }
+        final MessageBuilder builder; // null when read from bytes
+        private final MediaContentHolder.MediaContent.Reader root;
+        private final Thread owner; // null unless pooled
+        private boolean released;
 
-        @Override
-        public MediaContentHolder.MediaContent.Reader deserialize (final byte[] array) throws Exception {
-            final ByteBuffer byteBuffer = ByteBuffer.wrap(array);
-
-            MessageReader message =  SerializePacked.readFromUnbuffered(new ReadableByteChannel() {
-                @Override
-                public int read(ByteBuffer dst) throws IOException {
-                    dst.put(byteBuffer);
-                    return array.length;
-                }
+        Message(MessageBuilder builder, MediaContentHolder.MediaContent.Reader root) {
+            this(builder, root, false);
+        }
 
-                @Override
-                public boolean isOpen() {
-                    return false;
-                }
+        Message(MessageBuilder builder, MediaContentHolder.MediaContent.Reader root, boolean pooled) {
+            this.builder = builder;
+            this.root = root;
+            this.owner = pooled ? Thread.currentThread() : null;
+        }
+
+        /**
+         * Called once the message has been written: pooled segments go back to
+         * the pool, after which the message can't be read or written again.
+         */
+        void written() {
+            if (owner == Thread.currentThread()) {
+                released = true;
+                builder.release();
+            }
+        }
 
-                @Override
-                public void close() throws IOException {
+        public MediaContentHolder.MediaContent.Reader root() {
+            checkNotReleased();
+            return root;
+        }
 
-                }
-            });
-            return message.getRoot(MediaContentHolder.MediaContent.factory);
+        MessageBuilder builder() {
+            checkNotReleased();
+            if (builder != null) {
+                return builder;
+            }
+            MessageBuilder copy = new MessageBuilder();
+            copy.setRoot(MediaContentHolder.MediaContent.factory, root);
+            return copy;
+        }
+
+        private void checkNotReleased() {
+            if (released) {
+                throw new IllegalStateException("Message was already written and its segments released");
+            }
+        }
+    }
+
+    static final class PBSerializer extends Serializer<Message>
+    {
+        private final boolean packed;
+        private final String name;
+
+        // packed output is written here first, since its size is only known afterwards
+        private final ThreadLocal<ByteBuffer> packBuffers = new ThreadLocal<ByteBuffer>();
+
+        PBSerializer(boolean packed) {
+            this(packed, packed ? "capnp-packed" : "capnp");
+        }
+
+        PBSerializer(boolean packed, String name) {
+            this.packed = packed;
+            this.name = name;
         }
 
+        public String getName() { return name; }
+
         @Override
-        public byte[] serialize(MediaContentHolder.MediaContent.Reader content) throws IOException {
-            MessageBuilder message = new MessageBuilder();
-
-            MediaContentHolder.MediaContent.Builder mediaContent = message.initRoot(MediaContentHolder.MediaContent.factory);
-            mediaContent.setImage(content.getImage());
-            mediaContent.setMedia(content.getMedia());
-
-            final ByteBuffer byteBuffer = makeByteBuffer((int) Serialize.computeSerializedSizeInWords(message) * 8);
-            SerializePacked.writeToUnbuffered(new WritableByteChannel() {
-                @Override
-                public int write(ByteBuffer src) throws IOException {
-                    byteBuffer.put(src);
-                    return 0;
-                }
+        public Message deserialize(byte[] array) throws IOException {
+            return deserialize(ByteBuffer.wrap(array));
+        }
 
-                @Override
-                public boolean isOpen() {
-                    return false;
-                }
+        @Override
+        public Message deserialize(ByteBuffer in) throws IOException {
+            MessageReader message;
+            if (packed) {
+                ArrayInputStream input = new ArrayInputStream(in);
+                message = SerializePacked.read(input);
+                in.position(input.getReadBuffer().position());
+            } else if (in.position() % 8 == 0) {
+                message = Serialize.read(in); // segments are slices of in
+            } else {
+                // Serialize.read word-aligns the segment start against the absolute
+                // position, so read from a slice that starts at the message instead
+                ByteBuffer slice = in.slice();
+                message = Serialize.read(slice);
+                in.position(in.position() + slice.position());
+            }
+            return new Message(null, message.getRoot(MediaContentHolder.MediaContent.factory));
+        }
 
-                @Override
-                public void close() throws IOException {
+        @Override
+        public byte[] serialize(Message content) throws IOException {
+            MessageBuilder message = content.builder();
+            int size = (int) Serialize.computeSerializedSizeInWords(message) * 8;
+            if (!packed) {
+                byte[] array = new byte[size];
+                Serialize.write(new ArrayOutputStream(ByteBuffer.wrap(array)), message);
+                content.written();
+                return array;
+            }
+            ArrayOutputStream output = new ArrayOutputStream(packBuffer(size));
+            SerializePacked.write(output, message);
+            content.written();
+            ByteBuffer written = output.getWriteBuffer();
+            return Arrays.copyOf(written.array(), written.position());
+        }
 
-                }
-            }, message);
-            return byteBuffer.array();
+        @Override
+        public void serializeInto(Message content, ByteBuffer out) throws IOException {
+            ArrayOutputStream output = new ArrayOutputStream(out);
+            if (packed) {
+                SerializePacked.write(output, content.builder());
+            } else {
+                Serialize.write(output, content.builder());
+            }
+            content.written();
+            out.position(output.getWriteBuffer().position());
         }
 
-        static ByteBuffer makeByteBuffer(int bytes) {
-            ByteBuffer result = ByteBuffer.allocate(bytes);
-            result.order(ByteOrder.LITTLE_ENDIAN);
-            result.mark();
-            return result;
+        /**
+         * Packing adds at most one tag byte per word plus run lengths, and
+         * PackedOutputStream wants some slack at the end of its buffer.
+         */
+        private ByteBuffer packBuffer(int unpackedSize) {
+            int size = unpackedSize + unpackedSize / 8 + 64;
+            ByteBuffer buffer = packBuffers.get();
+            if (buffer == null || buffer.capacity() < size) {
+                buffer = ByteBuffer.allocate(size);
+                packBuffers.set(buffer);
+            }
+            buffer.clear();
+            return buffer;
         }
 
+        /**
+         * Messages are written back to back; their framing already carries
+         * the segment sizes, so no length prefix is needed.
+         */
         @Override
-        public final void serializeItems(MediaContentHolder.MediaContent.Reader[] items, OutputStream out0) throws IOException
+        public final void serializeItems(Message[] items, OutputStream out) throws IOException
         {
-            DataOutputStream out = new DataOutputStream(out0);
-            for (MediaContentHolder.MediaContent.Reader mc : items) {
-                byte[] data = serialize(mc);
-                out.writeInt(data.length);
-                out.write(data);
+            for (Message mc : items) {
+                out.write(serialize(mc));
             }
-
-            // should we write end marker (length of 0) or not? For now, omit it
             out.flush();
         }
 
+        /**
+         * Reads through one {@link MessageStreamReader}, so all items share a few
+         * large segment buffers instead of allocating per item.
+         */
         @Override
-        public MediaContentHolder.MediaContent.Reader[] deserializeItems(InputStream in0, int numberOfItems) throws Exception
+        public Message[] deserializeItems(InputStream in, int numberOfItems) throws Exception
         {
-            DataInputStream in = new DataInputStream(in0);
-            MediaContentHolder.MediaContent.Reader[] result = new  MediaContentHolder.MediaContent.Reader[numberOfItems];
+            MessageStreamReader reader;
+            if (packed) {
+                reader = new MessageStreamReader(
+                        new PackedInputStream(new BufferedInputStreamWrapper(Channels.newChannel(in))),
+                        ReaderOptions.DEFAULT_READER_OPTIONS, true);
+            } else {
+                reader = new MessageStreamReader(in, ReaderOptions.DEFAULT_READER_OPTIONS, true);
+            }
+            Message[] result = new Message[numberOfItems];
             for (int i = 0; i < numberOfItems; ++i) {
-                int len = in.readInt();
-                byte[] data = new byte[len];
-                in.readFully(data);
-                result[i] = deserialize(data);
+                MessageReader message = reader.next();
+                if (message == null) {
+                    throw new EOFException("Expected " + numberOfItems + " items, got " + i);
+                }
+                result[i] = new Message(null, message.getRoot(MediaContentHolder.MediaContent.factory));
             }
             return result;
         }
     }
 
-    public static final class Transformer extends MediaTransformer<MediaContentHolder.MediaContent.Reader> {
+    /**
+     * With <code>pooled</code> the segments of forwarded messages come from a
+     * per-thread {@link SegmentPool} and go back to it once the message is serialized.
+     */
+    public static final class Transformer extends MediaTransformer<Message> {
+
+        private final ThreadLocal<SegmentPool> pools;
+
+        public Transformer() {
+            this(false);
+        }
+
+        public Transformer(boolean pooled) {
+            if (pooled) {
+                pools = new ThreadLocal<SegmentPool>() {
+                    @Override
+                    protected SegmentPool initialValue() { return new SegmentPool(); }
+                };
+            } else {
+                pools = null;
+            }
+        }
 
         @Override
-        public MediaContentHolder.MediaContent.Reader forward( data.media.MediaContent mediaContent) {
-            MessageBuilder message = new MessageBuilder();
+        public Message forward( data.media.MediaContent mediaContent) {
+            MessageBuilder message = pools == null ? new MessageBuilder()
+                    : new MessageBuilder(BuilderArena.SUGGESTED_FIRST_SEGMENT_WORDS,
+                            BuilderArena.SUGGESTED_ALLOCATION_STRATEGY, pools.get());
             MediaContentHolder.MediaContent.Builder mediaContentBuilder = message.initRoot(MediaContentHolder.MediaContent.factory);
 
 
@@ -156,8 +291,7 @@ public class Capnproto {
                 forwardImage(mediaContent.getImages().get(i), imageBuilder);
             }
 
-            MediaContentHolder.MediaContent.Reader reader = mediaContentBuilder.asReader();
-            return reader;
+            return new Message(message, mediaContentBuilder.asReader(), pools != null);
         }
 
         private void forwardImage( data.media.Image image, MediaContentHolder.Image.Builder imageBuilder) {
@@ -165,11 +299,13 @@ public class Capnproto {
             imageBuilder.setHeight(image.getHeight());
             imageBuilder.setWidth(image.getWidth());
             imageBuilder.setSize(forwardSize(image.getSize()));
-            if (image.getTitle() != null) {
-                imageBuilder.setTitle(image.getTitle());
+            String title = image.getTitle();
+            if (title != null) {
+                imageBuilder.initTitle(Text.encodedSize(title)).write(title);
             }
-            if (image.getUri() != null) {
-                imageBuilder.setUri(image.getUri());
+            String uri = image.getUri();
+            if (uri != null) {
+                imageBuilder.initUri(Text.encodedSize(uri)).write(uri);
             }
 
         }
@@ -178,7 +314,7 @@ public class Capnproto {
 
             TextList.Builder personBuilder = mediaBuilder.initPerson(media.getPersons().size());
             for (int i = 0; i < media.getPersons().size(); i++) {
-                personBuilder.set(i, new Text.Reader(media.getPersons().get(i)));
+                personBuilder.set(i, media.getPersons().get(i));
             }
 
             StructList.Builder<MediaContentHolder.Pod.Builder> podListBuilder = mediaBuilder.initPods(media.getPods().size());
@@ -189,25 +325,29 @@ public class Capnproto {
 
             mediaBuilder.setBitrate(media.getBitrate());
             mediaBuilder.setDuration(media.getDuration());
-            if (media.getFormat() != null) {
-                mediaBuilder.setFormat(media.getFormat());
+            String format = media.getFormat();
+            if (format != null) {
+                mediaBuilder.initFormat(Text.encodedSize(format)).write(format);
             }
 
             mediaBuilder.setHeight(media.getHeight());
             mediaBuilder.setWidth(media.getWidth());
             mediaBuilder.setSize(media.getSize());
-            if (media.getCopyright() != null) {
-                mediaBuilder.setCopyright(media.getCopyright());
+            String copyright = media.getCopyright();
+            if (copyright != null) {
+                mediaBuilder.initCopyright(Text.encodedSize(copyright)).write(copyright);
             }
 
             mediaBuilder.setPlayer(forwardPlayer(media.getPlayer()));
 
-            if (media.getTitle() != null) {
-                mediaBuilder.setTitle(media.getTitle());
+            String title = media.getTitle();
+            if (title != null) {
+                mediaBuilder.initTitle(Text.encodedSize(title)).write(title);
             }
 
-            if (media.getUri() != null) {
-                mediaBuilder.setUri(media.getUri());
+            String uri = media.getUri();
+            if (uri != null) {
+                mediaBuilder.initUri(Text.encodedSize(uri)).write(uri);
             }
         }
 
@@ -216,16 +356,20 @@ public class Capnproto {
             if (innerPod != null) {
                 MediaContentHolder.Pod.Builder innerBuilder = podBuilder.initPod();
                 forwardPod(innerPod, innerBuilder);
-                podBuilder.setPod(innerBuilder.asReader());
             }
-            podBuilder.setMessage(new Text.Reader(pod.getMessage()));
+            String message = pod.getMessage();
+            podBuilder.initMessage(Text.encodedSize(message)).write(message);
         }
 
         @Override
-        public  data.media.MediaContent reverse(MediaContentHolder.MediaContent.Reader mc) {
-            ArrayList<data.media.Image> imageList = new ArrayList<>();
-            for (MediaContentHolder.Image.Reader reader : mc.getImage()) {
-                imageList.add(reverseImage(reader));
+        public  data.media.MediaContent reverse(Message message) {
+            MediaContentHolder.MediaContent.Reader mc = message.root();
+            StructList.Reader<MediaContentHolder.Image.Reader> images = mc.getImage();
+            ArrayList<data.media.Image> imageList = new ArrayList<>(images.size());
+            MediaContentHolder.Image.Reader image = null;
+            for (int i = 0; i < images.size(); i++) {
+                image = images.get(i, image);
+                imageList.add(reverseImage(image));
             }
 
             return new data.media.MediaContent(
@@ -235,26 +379,27 @@ public class Capnproto {
         }
 
         @Override
-        public data.media.MediaContent shallowReverse(MediaContentHolder.MediaContent.Reader mc)
+        public data.media.MediaContent shallowReverse(Message message)
         {
-            return new data.media.MediaContent(reverseMedia(mc.getMedia()), Collections.<data.media.Image>emptyList());
+            return new data.media.MediaContent(reverseMedia(message.root().getMedia()), Collections.<data.media.Image>emptyList());
         }
 
         private data.media.Media reverseMedia(MediaContentHolder.Media.Reader media)
         {
 
-            ArrayList<String> personsList = new ArrayList<>();
-            Iterator<Text.Reader> personIt = media.getPerson().iterator();
-
-            while (personIt.hasNext()) {
-                personsList.add(personIt.next().toString());
+            TextList.Reader persons = media.getPerson();
+            ArrayList<String> personsList = new ArrayList<>(persons.size());
+            Text.Cursor person = new Text.Cursor();
+            for (int i = 0; i < persons.size(); i++) {
+                personsList.add(persons.get(i, person).toString());
             }
 
-            ArrayList<data.media.Pod> podsList = new ArrayList<>();
-            Iterator<MediaContentHolder.Pod.Reader> podIt = media.getPods().iterator();
-
-            while (podIt.hasNext()) {
-                podsList.add(reversePod(podIt.next()));
+            StructList.Reader<MediaContentHolder.Pod.Reader> pods = media.getPods();
+            ArrayList<data.media.Pod> podsList = new ArrayList<>(pods.size());
+            MediaContentHolder.Pod.Reader pod = null;
+            for (int i = 0; i < pods.size(); i++) {
+                pod = pods.get(i, pod);
+                podsList.add(reversePod(pod));
             }
 
             // Media
@@ -335,8 +480,8 @@ public class Capnproto {
         }
 
         @Override
-        public MediaContentHolder.MediaContent.Reader[] resultArray(int size) {
-            return new MediaContentHolder.MediaContent.Reader[size];
+        public Message[] resultArray(int size) {
+            return new Message[size];
         }
     }
 }
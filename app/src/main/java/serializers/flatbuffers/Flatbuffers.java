@@ -34,7 +34,21 @@ import serializers.flatbuffers.media.Size;
  */
 public class Flatbuffers {
     public static void register(TestGroups groups) {
-        groups.media.add(new Transformer(), new PBSerializer(),
+        groups.media.add(new Transformer(), new PBSerializer("flatbuffers"),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                ));
+        groups.media.add(new Transformer(true, false), new PBSerializer("flatbuffers/reuse"),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                ));
+        groups.media.add(new Transformer(true, true), new PBSerializer("flatbuffers/direct"),
                 new SerFeatures(
                         SerFormat.BIN_CROSSLANG,
                         SerGraph.FLAT_TREE,
@@ -45,7 +59,11 @@ public class Flatbuffers {
 
     static final class PBSerializer extends Serializer<MediaContent>
     {
-        public String getName() { return "flatbuffers"; }
+        private final String name;
+
+        PBSerializer(String name) { this.name = name; }
+
+        public String getName() { return name; }
 
         @Override
         public MediaContent deserialize (byte[] array) throws Exception {
@@ -55,7 +73,26 @@ public class Flatbuffers {
 
         @Override
         public byte[] serialize(MediaContent content) throws IOException {
-            return content.getByteBuffer().compact().array();
+            ByteBuffer bb = content.getByteBuffer();
+            if (bb.hasArray() && bb.arrayOffset() == 0 && bb.position() == 0 && bb.remaining() == bb.array().length) {
+                return bb.array(); // already exactly the message, see Transformer.forward
+            }
+            byte[] array = new byte[bb.remaining()];
+            bb.duplicate().get(array);
+            return array;
+        }
+
+        @Override
+        public void serializeInto(MediaContent content, ByteBuffer out) {
+            out.put(content.getByteBuffer().duplicate());
+        }
+
+        @Override
+        public MediaContent deserialize(ByteBuffer in) {
+            // tables keep reading from the buffer, so hand them a view of it
+            MediaContent mc = MediaContent.getRootAsMediaContent(in.slice());
+            in.position(in.limit());
+            return mc;
         }
 
         @Override
@@ -100,8 +137,31 @@ public class Flatbuffers {
         }
     }
 
+    /**
+     * By default every message gets its own builder, sized from the largest message
+     * seen so far. With <code>recycleBuilder</code> each thread builds into one builder
+     * that is reset between messages, and the finished message is copied out of it;
+     * <code>direct</code> makes that builder use a direct buffer.
+     */
     public static final class Transformer extends MediaTransformer<MediaContent>
     {
+        private static final int MIN_BUILDER_SIZE = 1024;
+
+        private final boolean recycleBuilder;
+        private final boolean direct;
+        private final ThreadLocal<FlatBufferBuilder> builders = new ThreadLocal<FlatBufferBuilder>();
+
+        private volatile int builderSize = MIN_BUILDER_SIZE;
+
+        public Transformer() {
+            this(false, false);
+        }
+
+        public Transformer(boolean recycleBuilder, boolean direct) {
+            this.recycleBuilder = recycleBuilder;
+            this.direct = direct;
+        }
+
         @Override
         public MediaContent[] resultArray(int size) { return new MediaContent[size]; }
 
@@ -111,14 +171,17 @@ public class Flatbuffers {
         @Override
         public MediaContent forward(data.media.MediaContent mc)
         {
-            FlatBufferBuilder builder = new FlatBufferBuilder();
+            FlatBufferBuilder builder = builder();
+            // offset of the "" shared by all null titles and copyrights of this message,
+            // created on the first one
+            int[] emptyString = new int[1];
 
             // Media
-            int mediaOffset = forwardMedia(mc.getMedia(), builder);
+            int mediaOffset = forwardMedia(mc.getMedia(), builder, emptyString);
 
             int[] imageOffsets = new int[mc.images.size()];
             for (int i = 0; i < mc.images.size(); i++) {
-                imageOffsets[i] = forwardImage(mc.images.get(i), builder);
+                imageOffsets[i] = forwardImage(mc.images.get(i), builder, emptyString);
             }
 
             int imageOffset = MediaContent.createImageVector(builder, imageOffsets);
@@ -129,10 +192,39 @@ public class Flatbuffers {
             int rootTableOffset = MediaContent.endMediaContent(builder);
 
             MediaContent.finishMediaContentBuffer(builder, rootTableOffset);
+            int size = builder.offset();
+            if (size + (size >> 3) > builderSize) {
+                builderSize = size + (size >> 3);
+            }
+            if (recycleBuilder) {
+                // the builder is overwritten by the next message
+                return MediaContent.getRootAsMediaContent(ByteBuffer.wrap(builder.sizedByteArray()));
+            }
             return MediaContent.getRootAsMediaContent(builder.dataBuffer());
         }
 
-        private int forwardMedia(data.media.Media media, FlatBufferBuilder builder)
+        private FlatBufferBuilder builder()
+        {
+            if (!recycleBuilder) {
+                return new FlatBufferBuilder(builderSize);
+            }
+            FlatBufferBuilder builder = builders.get();
+            if (builder == null) {
+                builder = new FlatBufferBuilder(newBuffer(builderSize));
+                builders.set(builder);
+            } else {
+                ByteBuffer bb = builder.dataBuffer();
+                // growing always switches to a heap buffer
+                builder.init(direct && !bb.isDirect() ? newBuffer(bb.capacity()) : bb);
+            }
+            return builder;
+        }
+
+        private ByteBuffer newBuffer(int size) {
+            return direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        }
+
+        private int forwardMedia(data.media.Media media, FlatBufferBuilder builder, int[] emptyString)
         {
             int[] personVectorOffsets = new int[media.persons.size()];
             for (int i = 0; i < media.persons.size(); i++) {
@@ -146,7 +238,7 @@ public class Flatbuffers {
             // Media
             int mediaOffset = Media.createMedia(builder,
                     builder.createString(media.uri),
-                    media.title != null ? builder.createString(media.title) : builder.createString(ByteBuffer.allocate(0)),
+                    stringOrEmpty(builder, media.title, emptyString),
                     media.width,
                     media.height,
                     builder.createString(media.format),
@@ -155,12 +247,23 @@ public class Flatbuffers {
                     media.bitrate,
                     Media.createPersonVector(builder, personVectorOffsets),
                     forwardPlayer(media.player),
-                    media.copyright != null ? builder.createString(media.copyright) : builder.createString(ByteBuffer.allocate(0)),
+                    stringOrEmpty(builder, media.copyright, emptyString),
                     Media.createPodsVector(builder, podVectorOffsets)
             );
             return mediaOffset;
         }
 
+        private static int stringOrEmpty(FlatBufferBuilder builder, String str, int[] emptyString)
+        {
+            if (str != null) {
+                return builder.createString(str);
+            }
+            if (emptyString[0] == 0) {
+                emptyString[0] = builder.createString("");
+            }
+            return emptyString[0];
+        }
+
         private int forwardPod(data.media.Pod pod, FlatBufferBuilder builder)
         {
             int innerPodOffset = Integer.MIN_VALUE;
@@ -186,11 +289,11 @@ public class Flatbuffers {
             }
         }
 
-        private int forwardImage(data.media.Image image, FlatBufferBuilder builder)
+        private int forwardImage(data.media.Image image, FlatBufferBuilder builder, int[] emptyString)
         {
             int imageOffset = Image.createImage(builder,
                     builder.createString(image.uri),
-                    image.title != null ? builder.createString(image.title) : builder.createString(ByteBuffer.allocate(0)),
+                    stringOrEmpty(builder, image.title, emptyString),
                     image.width,
                     image.height,
                     forwardSize(image.size)
@@ -1,18 +1,43 @@
 package serializers.jackson;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.fasterxml.jackson.annotation.JsonFormat;
 import com.fasterxml.jackson.databind.introspect.Annotated;
 import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
 import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
 
+import data.media.Image;
+import data.media.Media;
+import data.media.MediaContent;
+import data.media.Pod;
+
 /**
  * Helper class used to force conditional "as-array" serialization
- * without requiring value classes to be annotated.
+ * without requiring value classes to be annotated. Array positions of the
+ * media classes are fixed here, as field order from reflection differs
+ * between the JVM and dex; they are the ones {@link JacksonJsonManualCol} uses.
  */
 class AsArrayIntrospector extends JacksonAnnotationIntrospector
 {
     private static final long serialVersionUID = 1L;
 
+    private static final Map<Class<?>, String[]> PROPERTY_ORDER = new HashMap<Class<?>, String[]>();
+    static {
+        PROPERTY_ORDER.put(MediaContent.class, new String[] { "media", "images" });
+        PROPERTY_ORDER.put(Media.class, new String[] { "uri", "title", "width", "height", "format",
+                "duration", "size", "bitrate", "persons", "player", "copyright", "pods" });
+        PROPERTY_ORDER.put(Image.class, new String[] { "uri", "title", "width", "height", "size" });
+        PROPERTY_ORDER.put(Pod.class, new String[] { "message", "pod" });
+    }
+
+    @Override
+    public String[] findSerializationPropertyOrder(AnnotatedClass ac) {
+        String[] order = PROPERTY_ORDER.get(ac.getRawType());
+        return (order != null) ? order : super.findSerializationPropertyOrder(ac);
+    }
+
     @Override
     public JsonFormat.Value findFormat(Annotated ann) {
         // 2.4 frowns upon trying to use this for Enums, so avoid those
@@ -30,5 +30,17 @@ public class JacksonJsonDatabind
                         ""
                 )
         );
+        // same, but POJOs written as positional arrays instead of objects
+        ObjectMapper colMapper = new ObjectMapper();
+        colMapper.setAnnotationIntrospector(new AsArrayIntrospector());
+        groups.media.add(JavaBuiltIn.mediaTransformer,
+                new StdJacksonDataBind<MediaContent>("json/jackson/databind-col", MediaContent.class, colMapper),
+                new SerFeatures(
+                        SerFormat.JSON,
+                        SerGraph.FLAT_TREE,
+                        SerClass.ZERO_KNOWLEDGE,
+                        ""
+                )
+        );
     }
 }
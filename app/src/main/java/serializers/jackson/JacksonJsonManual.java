@@ -6,11 +6,14 @@ import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.core.io.SerializedString;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -57,7 +60,7 @@ import static data.media.FieldMapping.FULL_FIELD_NAME_SIZE;
 import static data.media.FieldMapping.FULL_FIELD_NAME_TITLE;
 import static data.media.FieldMapping.FULL_FIELD_NAME_URI;
 import static data.media.FieldMapping.FULL_FIELD_NAME_WIDTH;
-import static data.media.FieldMapping.fullFieldToIndex;
+import static data.media.FieldMapping.fieldIndex;
 
 /**
  * "Hand-written" version of Jackson-based codec. Not optimized for compactness,
@@ -124,6 +127,26 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
         return mc;
     }
 
+    @Override
+    public final void serializeInto(MediaContent content, ByteBuffer out) throws IOException
+    {
+        JsonGenerator generator = constructGenerator(new ByteBufferBackedOutputStream(out));
+        writeMediaContent(generator, content);
+        generator.close();
+    }
+
+    @Override
+    public final MediaContent deserialize(ByteBuffer in) throws IOException
+    {
+        JsonParser parser = in.hasArray()
+                ? _factory.createParser(in.array(), in.arrayOffset() + in.position(), in.remaining())
+                : constructParser(new ByteBufferBackedInputStream(in));
+        MediaContent mc = readMediaContent(parser);
+        parser.close();
+        in.position(in.limit());
+        return mc;
+    }
+
     @Override
     public final void serializeItems(MediaContent[] items, OutputStream out) throws IOException
     {
@@ -279,16 +302,13 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
         // and fallback if order was changed
         for (; parser.getCurrentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
             String field = parser.getCurrentName();
-            Integer I = fullFieldToIndex.get(field);
-            if (I != null) {
-                switch (I) {
-                case FIELD_IX_MEDIA:
-                    mc.media = readMedia(parser);
-                    continue;
-                case FIELD_IX_IMAGES:
-                    mc.images = readImages(parser);
-                    continue;
-                }
+            switch (fieldIndex(field)) {
+            case FIELD_IX_MEDIA:
+                mc.media = readMedia(parser);
+                continue;
+            case FIELD_IX_IMAGES:
+                mc.images = readImages(parser);
+                continue;
             }
             throw new IllegalStateException("Unexpected field '"+field+"'");
         }
@@ -361,51 +381,48 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
         
         for (; parser.getCurrentToken() == JsonToken.FIELD_NAME; parser.nextToken()) {
             String field = parser.getCurrentName();
-            Integer I = fullFieldToIndex.get(field);
-            if (I != null) {
-                switch (I) {
-                case FIELD_IX_PLAYER:
-                    media.player = Media.Player.find(parser.nextTextValue());
-                    continue;
-                case FIELD_IX_URI:
-                    media.uri = parser.nextTextValue();
-                    continue;
-                case FIELD_IX_TITLE:
-                    media.title = parser.nextTextValue();
-                    continue;
-                case FIELD_IX_WIDTH:
-                    media.width = parser.nextIntValue(-1);
-                    haveWidth = true;
-                    continue;
-                case FIELD_IX_HEIGHT:
-                    media.height = parser.nextIntValue(-1);
-                    haveHeight = true;
-                    continue;
-                case FIELD_IX_FORMAT:
-                    media.format = parser.nextTextValue();
-                    continue;
-                case FIELD_IX_DURATION:
-                    media.duration = parser.nextLongValue(-1L);
-                    haveDuration = true;
-                    continue;
-                case FIELD_IX_SIZE:
-                    media.size = parser.nextLongValue(-1L);
-                    haveSize = true;
-                    continue;
-                case FIELD_IX_BITRATE:
-                    media.bitrate = parser.nextIntValue(-1);
-                    media.hasBitrate = true;
-                    continue;
-                case FIELD_IX_PERSONS:
-                    media.persons = readPersons(parser);
-                    continue;
-                case FIELD_IX_COPYRIGHT:
-                    media.copyright = parser.nextTextValue();
-                    continue;
-                case FIELD_IX_PODS:
-                    media.pods = readPods(parser);
-                    continue;
-                }
+            switch (fieldIndex(field)) {
+            case FIELD_IX_PLAYER:
+                media.player = Media.Player.find(parser.nextTextValue());
+                continue;
+            case FIELD_IX_URI:
+                media.uri = parser.nextTextValue();
+                continue;
+            case FIELD_IX_TITLE:
+                media.title = parser.nextTextValue();
+                continue;
+            case FIELD_IX_WIDTH:
+                media.width = parser.nextIntValue(-1);
+                haveWidth = true;
+                continue;
+            case FIELD_IX_HEIGHT:
+                media.height = parser.nextIntValue(-1);
+                haveHeight = true;
+                continue;
+            case FIELD_IX_FORMAT:
+                media.format = parser.nextTextValue();
+                continue;
+            case FIELD_IX_DURATION:
+                media.duration = parser.nextLongValue(-1L);
+                haveDuration = true;
+                continue;
+            case FIELD_IX_SIZE:
+                media.size = parser.nextLongValue(-1L);
+                haveSize = true;
+                continue;
+            case FIELD_IX_BITRATE:
+                media.bitrate = parser.nextIntValue(-1);
+                media.hasBitrate = true;
+                continue;
+            case FIELD_IX_PERSONS:
+                media.persons = readPersons(parser);
+                continue;
+            case FIELD_IX_COPYRIGHT:
+                media.copyright = parser.nextTextValue();
+                continue;
+            case FIELD_IX_PODS:
+                media.pods = readPods(parser);
+                continue;
             }
             throw new IllegalStateException("Unexpected field '"+field+"'");
         }
@@ -440,16 +457,13 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
             String field = parser.getCurrentName();
             // read value token (or START_ARRAY)
             parser.nextToken();
-            Integer I = fullFieldToIndex.get(field);
-            if (I != null) {
-                switch (I) {
-                    case FIELD_IX_MESSAGE:
-                        pod.message = parser.getText();
-                        continue;
-                    case FIELD_IX_POD:
-                        pod.pod = parser.getCurrentToken() != JsonToken.VALUE_NULL ? readPod(parser) : null;
-                        continue;
-                }
+            switch (fieldIndex(field)) {
+                case FIELD_IX_MESSAGE:
+                    pod.message = parser.getText();
+                    continue;
+                case FIELD_IX_POD:
+                    pod.pod = parser.getCurrentToken() != JsonToken.VALUE_NULL ? readPod(parser) : null;
+                    continue;
             }
             throw new IllegalStateException("Unexpected field '"+field+"'");
         }
@@ -532,27 +546,24 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
             String field = parser.getCurrentName();
             // read value token (or START_ARRAY)
             parser.nextToken();
-            Integer I = fullFieldToIndex.get(field);
-            if (I != null) {
-                switch (I) {
-                case FIELD_IX_URI:
-                    image.uri = parser.getText();
-                    continue;
-                case FIELD_IX_TITLE:
-                    image.title = parser.getText();
-                    continue;
-                case FIELD_IX_WIDTH:
-                    image.width = parser.getIntValue();
-                    haveWidth = true;
-                    continue;
-                case FIELD_IX_HEIGHT:
-                    image.height = parser.getIntValue();
-                    haveHeight = true;
-                    continue;
-                case FIELD_IX_SIZE:
-                    image.size = Image.Size.valueOf(parser.getText());
-                    continue;
-                }
+            switch (fieldIndex(field)) {
+            case FIELD_IX_URI:
+                image.uri = parser.getText();
+                continue;
+            case FIELD_IX_TITLE:
+                image.title = parser.getText();
+                continue;
+            case FIELD_IX_WIDTH:
+                image.width = parser.getIntValue();
+                haveWidth = true;
+                continue;
+            case FIELD_IX_HEIGHT:
+                image.height = parser.getIntValue();
+                haveHeight = true;
+                continue;
+            case FIELD_IX_SIZE:
+                image.size = Image.Size.valueOf(parser.getText());
+                continue;
             }
             throw new IllegalStateException("Unexpected field '"+field+"'");
         }
@@ -567,14 +578,14 @@ public class JacksonJsonManual extends BaseJacksonDriver<MediaContent>
         return image;
     }
     
-    private final void verifyCurrent(JsonParser parser, JsonToken expToken) throws IOException
+    protected final void verifyCurrent(JsonParser parser, JsonToken expToken) throws IOException
     {   
         if (parser.getCurrentToken() != expToken) {
             reportIllegal(parser, expToken);
         }
     }
 
-    private void reportIllegal(JsonParser parser, JsonToken expToken) throws IOException
+    protected void reportIllegal(JsonParser parser, JsonToken expToken) throws IOException
     {
         JsonToken curr = parser.getCurrentToken();
         String msg = "Expected token "+expToken+"; got "+curr;
@@ -0,0 +1,240 @@
+package serializers.jackson;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import data.media.Image;
+import data.media.Media;
+import data.media.MediaContent;
+import data.media.Pod;
+import serializers.JavaBuiltIn;
+import serializers.SerClass;
+import serializers.SerFeatures;
+import serializers.SerFormat;
+import serializers.SerGraph;
+import serializers.TestGroups;
+
+/**
+ * "Hand-written" counterpart of <code>json/jackson/databind-col</code>: every object is
+ * written as an array of its values in a fixed order, so there are no field names to
+ * write or match. Positions are the ones {@link AsArrayIntrospector} gives databind:
+ *<pre>
+ *  MediaContent: [media, images]
+ *  Media: [uri, title, width, height, format, duration, size, bitrate, persons, player, copyright, pods]
+ *  Image: [uri, title, width, height, size]
+ *  Pod: [message, pod]
+ *</pre>
+ * with <code>null</code> for a missing title, copyright or pod. As with databind,
+ * <code>bitrate</code> is always written and <code>hasBitrate</code> is not, so
+ * reading sets <code>hasBitrate</code>; the two codecs produce the same bytes and
+ * read each other's output.
+ */
+public class JacksonJsonManualCol extends JacksonJsonManual
+{
+    public static void register(TestGroups groups)
+    {
+        JsonFactory factory = new JsonFactory();
+        groups.media.add(JavaBuiltIn.mediaTransformer, new JacksonJsonManualCol("json/jackson/manual-col", factory),
+                new SerFeatures(SerFormat.JSON,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                )
+        );
+    }
+
+    public JacksonJsonManualCol(String name, JsonFactory jsonFactory)
+    {
+        super(name, jsonFactory);
+    }
+
+    //////////////////////////////////////////////////
+    // Serialization
+    //////////////////////////////////////////////////
+
+    @Override
+    protected void writeMediaContent(JsonGenerator generator, MediaContent content) throws IOException
+    {
+        generator.writeStartArray();
+        writeMedia(generator, content.media);
+        generator.writeStartArray();
+        for (Image i : content.images) {
+            writeImage(generator, i);
+        }
+        generator.writeEndArray();
+        generator.writeEndArray();
+    }
+
+    private void writeMedia(JsonGenerator generator, Media media) throws IOException
+    {
+        generator.writeStartArray();
+        generator.writeString(media.uri);
+        generator.writeString(media.title);
+        generator.writeNumber(media.width);
+        generator.writeNumber(media.height);
+        generator.writeString(media.format);
+        generator.writeNumber(media.duration);
+        generator.writeNumber(media.size);
+        generator.writeNumber(media.bitrate);
+        generator.writeStartArray();
+        for (String person : media.persons) {
+            generator.writeString(person);
+        }
+        generator.writeEndArray();
+        generator.writeString(media.player.name());
+        generator.writeString(media.copyright);
+        generator.writeStartArray();
+        for (Pod pod : media.pods) {
+            writePod(generator, pod);
+        }
+        generator.writeEndArray();
+        generator.writeEndArray();
+    }
+
+    private void writePod(JsonGenerator generator, Pod pod) throws IOException
+    {
+        generator.writeStartArray();
+        generator.writeString(pod.getMessage());
+        if (pod.getPod() != null) {
+            writePod(generator, pod.getPod());
+        } else {
+            generator.writeNull();
+        }
+        generator.writeEndArray();
+    }
+
+    private void writeImage(JsonGenerator generator, Image image) throws IOException
+    {
+        generator.writeStartArray();
+        generator.writeString(image.uri);
+        generator.writeString(image.title);
+        generator.writeNumber(image.width);
+        generator.writeNumber(image.height);
+        generator.writeString(image.size.name());
+        generator.writeEndArray();
+    }
+
+    //////////////////////////////////////////////////
+    // Deserialization
+    //////////////////////////////////////////////////
+
+    @Override
+    protected MediaContent readMediaContent(JsonParser parser) throws IOException
+    {
+        nextToken(parser, JsonToken.START_ARRAY);
+        nextToken(parser, JsonToken.START_ARRAY);
+        Media media = readMedia(parser);
+        nextToken(parser, JsonToken.START_ARRAY);
+        List<Image> images = new ArrayList<Image>();
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            images.add(readImage(parser));
+        }
+        verifyCurrent(parser, JsonToken.END_ARRAY);
+        nextToken(parser, JsonToken.END_ARRAY);
+        return new MediaContent(media, images);
+    }
+
+    private Media readMedia(JsonParser parser) throws IOException
+    {
+        Media media = new Media();
+        media.uri = nextText(parser);
+        media.title = nextTextOrNull(parser);
+        media.width = nextInt(parser);
+        media.height = nextInt(parser);
+        media.format = nextText(parser);
+        media.duration = nextLong(parser);
+        media.size = nextLong(parser);
+        // same as databind going through Media.setBitrate
+        media.bitrate = nextInt(parser);
+        media.hasBitrate = true;
+
+        nextToken(parser, JsonToken.START_ARRAY);
+        List<String> persons = new ArrayList<String>();
+        String str;
+        while ((str = parser.nextTextValue()) != null) {
+            persons.add(str);
+        }
+        verifyCurrent(parser, JsonToken.END_ARRAY);
+        media.persons = persons;
+
+        media.player = Media.Player.find(nextText(parser));
+        media.copyright = nextTextOrNull(parser);
+
+        nextToken(parser, JsonToken.START_ARRAY);
+        List<Pod> pods = new ArrayList<Pod>();
+        while (parser.nextToken() == JsonToken.START_ARRAY) {
+            pods.add(readPod(parser));
+        }
+        verifyCurrent(parser, JsonToken.END_ARRAY);
+        media.pods = pods;
+
+        nextToken(parser, JsonToken.END_ARRAY);
+        return media;
+    }
+
+    private Pod readPod(JsonParser parser) throws IOException
+    {
+        Pod pod = new Pod();
+        pod.message = nextText(parser);
+        if (parser.nextToken() != JsonToken.VALUE_NULL) {
+            verifyCurrent(parser, JsonToken.START_ARRAY);
+            pod.pod = readPod(parser);
+        }
+        nextToken(parser, JsonToken.END_ARRAY);
+        return pod;
+    }
+
+    private Image readImage(JsonParser parser) throws IOException
+    {
+        Image image = new Image();
+        image.uri = nextText(parser);
+        image.title = nextTextOrNull(parser);
+        image.width = nextInt(parser);
+        image.height = nextInt(parser);
+        image.size = Image.Size.valueOf(nextText(parser));
+        nextToken(parser, JsonToken.END_ARRAY);
+        return image;
+    }
+
+    private void nextToken(JsonParser parser, JsonToken expToken) throws IOException
+    {
+        parser.nextToken();
+        verifyCurrent(parser, expToken);
+    }
+
+    private String nextText(JsonParser parser) throws IOException
+    {
+        String text = parser.nextTextValue();
+        if (text == null) {
+            reportIllegal(parser, JsonToken.VALUE_STRING);
+        }
+        return text;
+    }
+
+    private String nextTextOrNull(JsonParser parser) throws IOException
+    {
+        String text = parser.nextTextValue();
+        if (text == null && parser.getCurrentToken() != JsonToken.VALUE_NULL) {
+            reportIllegal(parser, JsonToken.VALUE_STRING);
+        }
+        return text;
+    }
+
+    private int nextInt(JsonParser parser) throws IOException
+    {
+        nextToken(parser, JsonToken.VALUE_NUMBER_INT);
+        return parser.getIntValue();
+    }
+
+    private long nextLong(JsonParser parser) throws IOException
+    {
+        nextToken(parser, JsonToken.VALUE_NUMBER_INT);
+        return parser.getLongValue();
+    }
+}
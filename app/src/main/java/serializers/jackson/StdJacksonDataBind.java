@@ -6,10 +6,13 @@ import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedInputStream;
+import com.fasterxml.jackson.databind.util.ByteBufferBackedOutputStream;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public final class StdJacksonDataBind<T> extends BaseJacksonDataBind<T>
 {
@@ -36,6 +39,23 @@ public final class StdJacksonDataBind<T> extends BaseJacksonDataBind<T>
         return (T) reader.readValue(array, 0, array.length);
     }
 
+    @Override
+    public void serializeInto(T data, ByteBuffer out) throws IOException
+    {
+        writer.writeValue(new ByteBufferBackedOutputStream(out), data);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public T deserialize(ByteBuffer in) throws IOException
+    {
+        T result = in.hasArray()
+                ? (T) reader.readValue(in.array(), in.arrayOffset() + in.position(), in.remaining())
+                : (T) reader.readValue(new ByteBufferBackedInputStream(in));
+        in.position(in.limit());
+        return result;
+    }
+
     // // Future extensions for testing performance for item sequences
     
     @Override
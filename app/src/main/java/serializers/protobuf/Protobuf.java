@@ -5,10 +5,15 @@ import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
 import data.media.MediaTransformer;
 import serializers.SerClass;
 import serializers.SerFeatures;
@@ -31,7 +36,15 @@ import static serializers.protobuf.media.MediaContentHolder.Pod;
 public class Protobuf
 {
     public static void register(TestGroups groups) {
-        groups.media.add(new Transformer(), new PBSerializer(),
+        groups.media.add(new Transformer(), new PBSerializer("protobuf", false),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.CLASSES_KNOWN,
+                        ""
+                )
+        );
+        groups.media.add(new Transformer(), new PBSerializer("protobuf/delimited", true),
                 new SerFeatures(
                         SerFormat.BIN_CROSSLANG,
                         SerGraph.FLAT_TREE,
@@ -46,7 +59,16 @@ public class Protobuf
 
     static final class PBSerializer extends Serializer<MediaContent>
     {
-        public String getName() { return "protobuf"; }
+        private final String name;
+        // streams use varint length prefixes through one CodedOutputStream/CodedInputStream
+        private final boolean delimited;
+
+        PBSerializer(String name, boolean delimited) {
+            this.name = name;
+            this.delimited = delimited;
+        }
+
+        public String getName() { return name; }
 
         @Override
         public MediaContent deserialize (byte[] array) throws Exception {
@@ -58,9 +80,48 @@ public class Protobuf
             return content.toByteArray();
         }
 
+        @Override
+        public void serializeInto(MediaContent content, ByteBuffer out) throws IOException {
+            int size = content.getSerializedSize();
+            if (out.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            if (out.hasArray()) {
+                CodedOutputStream output = CodedOutputStream.newInstance(out.array(),
+                        out.arrayOffset() + out.position(), size);
+                content.writeTo(output);
+                output.checkNoSpaceLeft();
+                out.position(out.position() + size);
+            } else {
+                CodedOutputStream output = CodedOutputStream.newInstance(out);
+                content.writeTo(output);
+                output.flush();
+            }
+        }
+
+        @Override
+        public MediaContent deserialize(ByteBuffer in) throws IOException {
+            CodedInputStream input = in.hasArray()
+                    ? CodedInputStream.newInstance(in.array(), in.arrayOffset() + in.position(), in.remaining())
+                    : CodedInputStream.newInstance(in);
+            MediaContent mc = MediaContent.parseFrom(input);
+            in.position(in.limit());
+            return mc;
+        }
+
         @Override
         public final void serializeItems(MediaContent[] items, OutputStream out0) throws IOException
         {
+            if (delimited) {
+                // same bytes as writeDelimitedTo, without a new CodedOutputStream per item
+                CodedOutputStream out = CodedOutputStream.newInstance(out0);
+                for (MediaContent item : items) {
+                    out.writeRawVarint32(item.getSerializedSize());
+                    item.writeTo(out);
+                }
+                out.flush();
+                return;
+            }
             DataOutputStream out = new DataOutputStream(out0);
             for (MediaContent item : items) {
                 byte[] data = item.toByteArray();
@@ -74,6 +135,19 @@ public class Protobuf
         @Override
         public MediaContent[] deserializeItems(InputStream in0, int numberOfItems) throws IOException 
         {
+            if (delimited) {
+                CodedInputStream in = CodedInputStream.newInstance(in0);
+                MediaContent[] result = new MediaContent[numberOfItems];
+                for (int i = 0; i < numberOfItems; ++i) {
+                    // the 64 MB size limit is per message, not per stream
+                    in.resetSizeCounter();
+                    int limit = in.pushLimit(in.readRawVarint32());
+                    result[i] = MediaContent.PARSER.parseFrom(in);
+                    in.checkLastTagWas(0);
+                    in.popLimit(limit);
+                }
+                return result;
+            }
             DataInputStream in = new DataInputStream(in0);
             MediaContent[] result = new MediaContent[numberOfItems];
             for (int i = 0; i < numberOfItems; ++i) {
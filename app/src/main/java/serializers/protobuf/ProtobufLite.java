@@ -0,0 +1,296 @@
+package serializers.protobuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import data.media.MediaTransformer;
+import serializers.SerClass;
+import serializers.SerFeatures;
+import serializers.SerFormat;
+import serializers.SerGraph;
+import serializers.Serializer;
+import serializers.TestGroups;
+
+import static serializers.protobuf.media.MediaContentLiteHolder.Image;
+import static serializers.protobuf.media.MediaContentLiteHolder.Media;
+import static serializers.protobuf.media.MediaContentLiteHolder.MediaContent;
+import static serializers.protobuf.media.MediaContentLiteHolder.Pod;
+
+/**
+ * Same as {@link Protobuf}, but with classes generated for the lite runtime
+ * (<code>optimize_for = LITE_RUNTIME</code> in <code>src/main/proto/media-lite.proto</code>),
+ * which is what Android apps usually ship: no descriptors, no reflection.
+ * Streams use varint length prefixes like <code>protobuf/delimited</code>.
+ */
+public class ProtobufLite
+{
+    public static void register(TestGroups groups) {
+        groups.media.add(new Transformer(), new PBSerializer("protobuf/lite"),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.CLASSES_KNOWN,
+                        ""
+                )
+        );
+    }
+
+    // ------------------------------------------------------------
+    // Serializers
+
+    static final class PBSerializer extends Serializer<MediaContent>
+    {
+        private final String name;
+
+        PBSerializer(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+
+        @Override
+        public MediaContent deserialize (byte[] array) throws Exception {
+            return MediaContent.parseFrom(array);
+        }
+
+        @Override
+        public byte[] serialize(MediaContent content) {
+            return content.toByteArray();
+        }
+
+        @Override
+        public void serializeInto(MediaContent content, ByteBuffer out) throws IOException {
+            int size = content.getSerializedSize();
+            if (out.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            if (out.hasArray()) {
+                CodedOutputStream output = CodedOutputStream.newInstance(out.array(),
+                        out.arrayOffset() + out.position(), size);
+                content.writeTo(output);
+                output.checkNoSpaceLeft();
+                out.position(out.position() + size);
+            } else {
+                CodedOutputStream output = CodedOutputStream.newInstance(out);
+                content.writeTo(output);
+                output.flush();
+            }
+        }
+
+        @Override
+        public MediaContent deserialize(ByteBuffer in) throws IOException {
+            CodedInputStream input = in.hasArray()
+                    ? CodedInputStream.newInstance(in.array(), in.arrayOffset() + in.position(), in.remaining())
+                    : CodedInputStream.newInstance(in);
+            MediaContent mc = MediaContent.parseFrom(input);
+            in.position(in.limit());
+            return mc;
+        }
+
+        @Override
+        public final void serializeItems(MediaContent[] items, OutputStream out0) throws IOException
+        {
+            CodedOutputStream out = CodedOutputStream.newInstance(out0);
+            for (MediaContent item : items) {
+                out.writeRawVarint32(item.getSerializedSize());
+                item.writeTo(out);
+            }
+            out.flush();
+        }
+
+        @Override
+        public MediaContent[] deserializeItems(InputStream in0, int numberOfItems) throws IOException 
+        {
+            CodedInputStream in = CodedInputStream.newInstance(in0);
+            MediaContent[] result = new MediaContent[numberOfItems];
+            for (int i = 0; i < numberOfItems; ++i) {
+                in.resetSizeCounter();
+                int limit = in.pushLimit(in.readRawVarint32());
+                result[i] = MediaContent.PARSER.parseFrom(in);
+                in.checkLastTagWas(0);
+                in.popLimit(limit);
+            }
+            return result;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Transformers
+
+    static final class Transformer  extends MediaTransformer<MediaContent>
+    {
+        @Override
+        public MediaContent[] resultArray(int size) { return new MediaContent[size]; }
+
+        // ----------------------------------------------------------
+        // Forward
+
+		public MediaContent forward(data.media.MediaContent mc)
+		{
+			MediaContent.Builder cb = MediaContent.newBuilder();
+
+			cb.setMedia(forwardMedia(mc.media));
+			for (data.media.Image image : mc.images) {
+				cb.addImage(forwardImage(image));
+			}
+
+			return cb.build();
+		}
+
+		private Media forwardMedia(data.media.Media media)
+		{
+
+
+			// Media
+			Media.Builder mb = Media.newBuilder();
+			mb.setUri(media.uri);
+			if (media.title != null) mb.setTitle(media.title);
+			mb.setWidth(media.width);
+			mb.setHeight(media.height);
+			mb.setFormat(media.format);
+			mb.setDuration(media.duration);
+			mb.setSize(media.size);
+			if (media.hasBitrate) mb.setBitrate(media.bitrate);
+			for (String person : media.persons) {
+				mb.addPerson(person);
+			}
+			mb.setPlayer(forwardPlayer(media.player));
+			if (media.copyright != null) mb.setCopyright(media.copyright);
+			for (data.media.Pod pod : media.getPods()) {
+				mb.addPods(forwardPod(pod));
+			}
+
+			return mb.build();
+		}
+
+		private Pod forwardPod(data.media.Pod pod) {
+			Pod.Builder pb = Pod.newBuilder();
+			pb.setMessage(pod.getMessage());
+			if (pod.getPod() != null) {
+				pb.setPod(forwardPod(pod.getPod()));
+			}
+			return pb.build();
+		}
+
+		public Media.Player forwardPlayer(data.media.Media.Player p)
+		{
+			switch (p) {
+				case JAVA: return Media.Player.JAVA;
+				case FLASH: return Media.Player.FLASH;
+				default:
+					throw new AssertionError("invalid case: " + p);
+			}
+		}
+
+		private Image forwardImage(data.media.Image image)
+		{
+			Image.Builder ib = Image.newBuilder();
+			ib.setUri(image.uri);
+			if (image.title != null) ib.setTitle(image.title);
+			ib.setWidth(image.width);
+			ib.setHeight(image.height);
+			ib.setSize(forwardSize(image.size));
+			return ib.build();
+		}
+
+		public Image.Size forwardSize(data.media.Image.Size s)
+		{
+			switch (s) {
+				case SMALL: return Image.Size.SMALL;
+				case LARGE: return Image.Size.LARGE;
+				default:
+					throw new AssertionError("invalid case: " + s);
+			}
+		}
+
+		// ----------------------------------------------------------
+		// Reverse
+
+		public data.media.MediaContent reverse(MediaContent mc)
+		{
+			List<data.media.Image> images = new ArrayList<data.media.Image>(mc.getImageCount());
+
+			for (Image image : mc.getImageList()) {
+				images.add(reverseImage(image));
+			}
+
+			return new data.media.MediaContent(reverseMedia(mc.getMedia()), images);
+		}
+
+		private data.media.Media reverseMedia(Media media)
+		{
+			ArrayList<data.media.Pod> pods = new ArrayList<>();
+			for (Pod pod : media.getPodsList()) {
+				pods.add(reversePod(pod));
+			}
+
+			// Media
+			return new data.media.Media(
+				media.getUri(),
+				media.hasTitle() ? media.getTitle() : null,
+				media.getWidth(),
+				media.getHeight(),
+				media.getFormat(),
+				media.getDuration(),
+				media.getSize(),
+				media.hasBitrate() ? media.getBitrate() : 0,
+				media.hasBitrate(),
+				new ArrayList<String>(media.getPersonList()),
+				reversePlayer(media.getPlayer()),
+				media.hasCopyright() ? media.getCopyright() : null,
+					pods
+			);
+		}
+
+		private data.media.Pod reversePod(Pod pod) {
+			return new data.media.Pod(
+				pod.getMessage(),
+				pod.hasPod() ? reversePod(pod.getPod()) : null
+			);
+		}
+
+		public data.media.Media.Player reversePlayer(Media.Player p)
+		{
+			switch (p) {
+				case JAVA:  return data.media.Media.Player.JAVA;
+				case FLASH: return data.media.Media.Player.FLASH;
+				default:
+					throw new AssertionError("invalid case: " + p);
+			}
+		}
+
+		private data.media.Image reverseImage(Image image)
+		{
+			return new data.media.Image(
+				image.getUri(),
+				image.hasTitle() ? image.getTitle() : null,
+				image.getWidth(),
+				image.getHeight(),
+				reverseSize(image.getSize()));
+		}
+
+		public data.media.Image.Size reverseSize(Image.Size s)
+		{
+			switch (s) {
+				case SMALL: return data.media.Image.Size.SMALL;
+				case LARGE: return data.media.Image.Size.LARGE;
+				default:
+					throw new AssertionError("invalid case: " + s);
+			}
+		}
+
+		public data.media.MediaContent shallowReverse(MediaContent mc)
+		{
+			return new data.media.MediaContent(reverseMedia(mc.getMedia()), Collections.<data.media.Image>emptyList());
+		}
+    }
+}
@@ -0,0 +1,569 @@
+package serializers.protobuf;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
+
+import data.media.Image;
+import data.media.Media;
+import data.media.MediaContent;
+import data.media.Pod;
+import serializers.JavaBuiltIn;
+import serializers.SerClass;
+import serializers.SerFeatures;
+import serializers.SerFormat;
+import serializers.SerGraph;
+import serializers.Serializer;
+import serializers.TestGroups;
+
+/**
+ * "Hand-written" protobuf codec: writes the wire format of the generated
+ * <code>MediaContentHolder</code> straight from the <code>data.media</code> classes,
+ * and reads it back into them, without building protobuf messages in between.
+ * Output is byte for byte what <code>protobuf</code> writes; streams use the varint
+ * length prefixes of <code>protobuf/delimited</code>.
+ */
+public final class ProtobufManual
+{
+    public static void register(TestGroups groups) {
+        groups.media.add(JavaBuiltIn.mediaTransformer, new MediaContentSerializer("protobuf/manual"),
+                new SerFeatures(
+                        SerFormat.BIN_CROSSLANG,
+                        SerGraph.FLAT_TREE,
+                        SerClass.MANUAL_OPT,
+                        ""
+                )
+        );
+    }
+
+    // Tags of the MediaContentHolder fields: field number << 3 | wire type
+
+    private static final int LENGTH_DELIMITED = WireFormat.WIRETYPE_LENGTH_DELIMITED;
+    private static final int VARINT = WireFormat.WIRETYPE_VARINT;
+
+    private static final int TAG_CONTENT_IMAGE = 1 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_CONTENT_MEDIA = 2 << 3 | LENGTH_DELIMITED;
+
+    private static final int TAG_MEDIA_URI = 1 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_MEDIA_TITLE = 2 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_MEDIA_WIDTH = 3 << 3 | VARINT;
+    private static final int TAG_MEDIA_HEIGHT = 4 << 3 | VARINT;
+    private static final int TAG_MEDIA_FORMAT = 5 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_MEDIA_DURATION = 6 << 3 | VARINT;
+    private static final int TAG_MEDIA_SIZE = 7 << 3 | VARINT;
+    private static final int TAG_MEDIA_BITRATE = 8 << 3 | VARINT;
+    private static final int TAG_MEDIA_PERSON = 9 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_MEDIA_PLAYER = 10 << 3 | VARINT;
+    private static final int TAG_MEDIA_COPYRIGHT = 11 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_MEDIA_PODS = 12 << 3 | LENGTH_DELIMITED;
+
+    private static final int TAG_IMAGE_URI = 1 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_IMAGE_TITLE = 2 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_IMAGE_WIDTH = 3 << 3 | VARINT;
+    private static final int TAG_IMAGE_HEIGHT = 4 << 3 | VARINT;
+    private static final int TAG_IMAGE_SIZE = 5 << 3 | VARINT;
+
+    private static final int TAG_POD_MESSAGE = 1 << 3 | LENGTH_DELIMITED;
+    private static final int TAG_POD_POD = 2 << 3 | LENGTH_DELIMITED;
+
+    // same as CodedInputStream's default for nested messages
+    private static final int MAX_POD_DEPTH = 64;
+
+    // ------------------------------------------------------------
+    // Serializer (just one)
+
+    static final class MediaContentSerializer extends Serializer<MediaContent>
+    {
+        private final String name;
+
+        MediaContentSerializer(String name) { this.name = name; }
+
+        public String getName() { return name; }
+
+        @Override
+        public MediaContent deserialize(byte[] array) throws IOException {
+            return readMediaContent(CodedInputStream.newInstance(array));
+        }
+
+        @Override
+        public byte[] serialize(MediaContent content) throws IOException {
+            Lengths lengths = new Lengths();
+            byte[] result = new byte[mediaContentSize(content, lengths)];
+            CodedOutputStream output = CodedOutputStream.newInstance(result);
+            writeMediaContent(output, content, lengths);
+            output.checkNoSpaceLeft();
+            return result;
+        }
+
+        @Override
+        public void serializeInto(MediaContent content, ByteBuffer out) throws IOException {
+            Lengths lengths = new Lengths();
+            int size = mediaContentSize(content, lengths);
+            if (out.remaining() < size) {
+                throw new BufferOverflowException();
+            }
+            if (out.hasArray()) {
+                CodedOutputStream output = CodedOutputStream.newInstance(out.array(),
+                        out.arrayOffset() + out.position(), size);
+                writeMediaContent(output, content, lengths);
+                output.checkNoSpaceLeft();
+                out.position(out.position() + size);
+            } else {
+                CodedOutputStream output = CodedOutputStream.newInstance(out);
+                writeMediaContent(output, content, lengths);
+                output.flush();
+            }
+        }
+
+        @Override
+        public MediaContent deserialize(ByteBuffer in) throws IOException {
+            CodedInputStream input = in.hasArray()
+                    ? CodedInputStream.newInstance(in.array(), in.arrayOffset() + in.position(), in.remaining())
+                    : CodedInputStream.newInstance(in);
+            MediaContent mc = readMediaContent(input);
+            in.position(in.limit());
+            return mc;
+        }
+
+        @Override
+        public final void serializeItems(MediaContent[] items, OutputStream out0) throws IOException
+        {
+            CodedOutputStream out = CodedOutputStream.newInstance(out0);
+            Lengths lengths = new Lengths();
+            for (MediaContent item : items) {
+                lengths.clear();
+                out.writeRawVarint32(mediaContentSize(item, lengths));
+                writeMediaContent(out, item, lengths);
+            }
+            out.flush();
+        }
+
+        @Override
+        public MediaContent[] deserializeItems(InputStream in0, int numberOfItems) throws IOException
+        {
+            CodedInputStream in = CodedInputStream.newInstance(in0);
+            MediaContent[] result = new MediaContent[numberOfItems];
+            for (int i = 0; i < numberOfItems; ++i) {
+                in.resetSizeCounter();
+                int limit = in.pushLimit(in.readRawVarint32());
+                result[i] = readMediaContent(in);
+                in.popLimit(limit);
+            }
+            return result;
+        }
+    }
+
+    // ------------------------------------------------------------
+    // MediaContent
+
+    static int mediaContentSize(MediaContent content, Lengths lengths)
+    {
+        int size = 0;
+        for (Image image : content.images) {
+            size += messageSize(lengths.add(imageSize(image)));
+        }
+        int slot = lengths.reserve();
+        size += messageSize(lengths.set(slot, mediaSize(content.media, lengths)));
+        return size;
+    }
+
+    static void writeMediaContent(CodedOutputStream out, MediaContent content, Lengths lengths)
+        throws IOException
+    {
+        for (Image image : content.images) {
+            out.writeRawVarint32(TAG_CONTENT_IMAGE);
+            out.writeRawVarint32(lengths.next());
+            writeImage(out, image);
+        }
+        out.writeRawVarint32(TAG_CONTENT_MEDIA);
+        out.writeRawVarint32(lengths.next());
+        writeMedia(out, content.media, lengths);
+    }
+
+    static MediaContent readMediaContent(CodedInputStream in) throws IOException
+    {
+        Media media = null;
+        List<Image> images = new ArrayList<Image>();
+        while (true) {
+            int tag = in.readTag();
+            switch (tag) {
+            case 0:
+                if (media == null) {
+                    throw new InvalidProtocolBufferException("Message missing required fields: media");
+                }
+                return new MediaContent(media, images);
+            case TAG_CONTENT_IMAGE: {
+                int limit = in.pushLimit(in.readRawVarint32());
+                images.add(readImage(in));
+                in.popLimit(limit);
+                break;
+            }
+            case TAG_CONTENT_MEDIA: {
+                int limit = in.pushLimit(in.readRawVarint32());
+                media = readMedia(in);
+                in.popLimit(limit);
+                break;
+            }
+            default:
+                skip(in, tag);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Media
+
+    private static int mediaSize(Media media, Lengths lengths)
+    {
+        int size = stringSize(media.uri);
+        if (media.title != null) {
+            size += stringSize(media.title);
+        }
+        size += 1 + CodedOutputStream.computeInt32SizeNoTag(media.width);
+        size += 1 + CodedOutputStream.computeInt32SizeNoTag(media.height);
+        size += stringSize(media.format);
+        size += 1 + CodedOutputStream.computeInt64SizeNoTag(media.duration);
+        size += 1 + CodedOutputStream.computeInt64SizeNoTag(media.size);
+        if (media.hasBitrate) {
+            size += 1 + CodedOutputStream.computeInt32SizeNoTag(media.bitrate);
+        }
+        for (String person : media.persons) {
+            size += stringSize(person);
+        }
+        size += 1 + CodedOutputStream.computeEnumSizeNoTag(media.player.ordinal());
+        if (media.copyright != null) {
+            size += stringSize(media.copyright);
+        }
+        for (Pod pod : media.pods) {
+            int slot = lengths.reserve();
+            size += messageSize(lengths.set(slot, podSize(pod, lengths)));
+        }
+        return size;
+    }
+
+    private static void writeMedia(CodedOutputStream out, Media media, Lengths lengths) throws IOException
+    {
+        writeString(out, TAG_MEDIA_URI, media.uri);
+        if (media.title != null) {
+            writeString(out, TAG_MEDIA_TITLE, media.title);
+        }
+        out.writeRawVarint32(TAG_MEDIA_WIDTH);
+        out.writeInt32NoTag(media.width);
+        out.writeRawVarint32(TAG_MEDIA_HEIGHT);
+        out.writeInt32NoTag(media.height);
+        writeString(out, TAG_MEDIA_FORMAT, media.format);
+        out.writeRawVarint32(TAG_MEDIA_DURATION);
+        out.writeInt64NoTag(media.duration);
+        out.writeRawVarint32(TAG_MEDIA_SIZE);
+        out.writeInt64NoTag(media.size);
+        if (media.hasBitrate) {
+            out.writeRawVarint32(TAG_MEDIA_BITRATE);
+            out.writeInt32NoTag(media.bitrate);
+        }
+        for (String person : media.persons) {
+            writeString(out, TAG_MEDIA_PERSON, person);
+        }
+        out.writeRawVarint32(TAG_MEDIA_PLAYER);
+        out.writeEnumNoTag(media.player.ordinal());
+        if (media.copyright != null) {
+            writeString(out, TAG_MEDIA_COPYRIGHT, media.copyright);
+        }
+        for (Pod pod : media.pods) {
+            out.writeRawVarint32(TAG_MEDIA_PODS);
+            out.writeRawVarint32(lengths.next());
+            writePod(out, pod, lengths);
+        }
+    }
+
+    private static Media readMedia(CodedInputStream in) throws IOException
+    {
+        // absent fields read as the generated getters return them
+        String uri = "";
+        String title = null;
+        int width = 0;
+        int height = 0;
+        String format = "";
+        long duration = 0;
+        long size = 0;
+        int bitrate = 0;
+        boolean hasBitrate = false;
+        ArrayList<String> persons = new ArrayList<String>();
+        Media.Player player = Media.Player.JAVA;
+        String copyright = null;
+        ArrayList<Pod> pods = new ArrayList<Pod>();
+        while (true) {
+            int tag = in.readTag();
+            switch (tag) {
+            case 0:
+                return new Media(uri, title, width, height, format, duration, size,
+                        bitrate, hasBitrate, persons, player, copyright, pods);
+            case TAG_MEDIA_URI:
+                uri = in.readString();
+                break;
+            case TAG_MEDIA_TITLE:
+                title = in.readString();
+                break;
+            case TAG_MEDIA_WIDTH:
+                width = in.readInt32();
+                break;
+            case TAG_MEDIA_HEIGHT:
+                height = in.readInt32();
+                break;
+            case TAG_MEDIA_FORMAT:
+                format = in.readString();
+                break;
+            case TAG_MEDIA_DURATION:
+                duration = in.readInt64();
+                break;
+            case TAG_MEDIA_SIZE:
+                size = in.readInt64();
+                break;
+            case TAG_MEDIA_BITRATE:
+                bitrate = in.readInt32();
+                hasBitrate = true;
+                break;
+            case TAG_MEDIA_PERSON:
+                persons.add(in.readString());
+                break;
+            case TAG_MEDIA_PLAYER:
+                player = enumValue(Media.Player.values(), in.readEnum());
+                break;
+            case TAG_MEDIA_COPYRIGHT:
+                copyright = in.readString();
+                break;
+            case TAG_MEDIA_PODS: {
+                int limit = in.pushLimit(in.readRawVarint32());
+                pods.add(readPod(in, 1));
+                in.popLimit(limit);
+                break;
+            }
+            default:
+                skip(in, tag);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Pod
+
+    private static int podSize(Pod pod, Lengths lengths)
+    {
+        int size = stringSize(pod.message);
+        if (pod.pod != null) {
+            int slot = lengths.reserve();
+            size += messageSize(lengths.set(slot, podSize(pod.pod, lengths)));
+        }
+        return size;
+    }
+
+    private static void writePod(CodedOutputStream out, Pod pod, Lengths lengths) throws IOException
+    {
+        writeString(out, TAG_POD_MESSAGE, pod.message);
+        if (pod.pod != null) {
+            out.writeRawVarint32(TAG_POD_POD);
+            out.writeRawVarint32(lengths.next());
+            writePod(out, pod.pod, lengths);
+        }
+    }
+
+    private static Pod readPod(CodedInputStream in, int depth) throws IOException
+    {
+        if (depth > MAX_POD_DEPTH) {
+            throw new InvalidProtocolBufferException("Pods nested more than " + MAX_POD_DEPTH + " deep.");
+        }
+        String message = "";
+        Pod child = null;
+        while (true) {
+            int tag = in.readTag();
+            switch (tag) {
+            case 0:
+                return new Pod(message, child);
+            case TAG_POD_MESSAGE:
+                message = in.readString();
+                break;
+            case TAG_POD_POD: {
+                int limit = in.pushLimit(in.readRawVarint32());
+                child = readPod(in, depth + 1);
+                in.popLimit(limit);
+                break;
+            }
+            default:
+                skip(in, tag);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Image
+
+    private static int imageSize(Image image)
+    {
+        int size = stringSize(image.uri);
+        if (image.title != null) {
+            size += stringSize(image.title);
+        }
+        size += 1 + CodedOutputStream.computeInt32SizeNoTag(image.width);
+        size += 1 + CodedOutputStream.computeInt32SizeNoTag(image.height);
+        size += 1 + CodedOutputStream.computeEnumSizeNoTag(image.size.ordinal());
+        return size;
+    }
+
+    private static void writeImage(CodedOutputStream out, Image image) throws IOException
+    {
+        writeString(out, TAG_IMAGE_URI, image.uri);
+        if (image.title != null) {
+            writeString(out, TAG_IMAGE_TITLE, image.title);
+        }
+        out.writeRawVarint32(TAG_IMAGE_WIDTH);
+        out.writeInt32NoTag(image.width);
+        out.writeRawVarint32(TAG_IMAGE_HEIGHT);
+        out.writeInt32NoTag(image.height);
+        out.writeRawVarint32(TAG_IMAGE_SIZE);
+        out.writeEnumNoTag(image.size.ordinal());
+    }
+
+    private static Image readImage(CodedInputStream in) throws IOException
+    {
+        String uri = "";
+        String title = null;
+        int width = 0;
+        int height = 0;
+        Image.Size size = Image.Size.SMALL;
+        while (true) {
+            int tag = in.readTag();
+            switch (tag) {
+            case 0:
+                return new Image(uri, title, width, height, size);
+            case TAG_IMAGE_URI:
+                uri = in.readString();
+                break;
+            case TAG_IMAGE_TITLE:
+                title = in.readString();
+                break;
+            case TAG_IMAGE_WIDTH:
+                width = in.readInt32();
+                break;
+            case TAG_IMAGE_HEIGHT:
+                height = in.readInt32();
+                break;
+            case TAG_IMAGE_SIZE:
+                size = enumValue(Image.Size.values(), in.readEnum());
+                break;
+            default:
+                skip(in, tag);
+            }
+        }
+    }
+
+    // ------------------------------------------------------------
+    // Helpers
+
+    /**
+     * Lengths of the nested messages, recorded while sizing in the order they are
+     * written, so that writing does not measure every string again. A message takes
+     * its slot before its children are sized and fills it in afterwards.
+     */
+    static final class Lengths
+    {
+        private int[] values = new int[64];
+        private int count;
+        private int read;
+
+        void clear() {
+            count = 0;
+            read = 0;
+        }
+
+        int reserve() {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, count * 2);
+            }
+            return count++;
+        }
+
+        int set(int slot, int length) {
+            values[slot] = length;
+            return length;
+        }
+
+        int add(int length) {
+            return set(reserve(), length);
+        }
+
+        int next() {
+            return values[read++];
+        }
+    }
+
+    // field sizes count one byte for the tag, which all the tags above fit in
+    private static int messageSize(int size)
+    {
+        return 1 + CodedOutputStream.computeRawVarint32Size(size) + size;
+    }
+
+    private static int stringSize(String value)
+    {
+        int length = utf8Length(value);
+        return 1 + CodedOutputStream.computeRawVarint32Size(length) + length;
+    }
+
+    private static void writeString(CodedOutputStream out, int tag, String value) throws IOException
+    {
+        out.writeRawVarint32(tag);
+        out.writeStringNoTag(value);
+    }
+
+    /**
+     * Length of <code>value.getBytes("UTF-8")</code>, which is what
+     * <code>writeStringNoTag</code> writes, without encoding it.
+     */
+    private static int utf8Length(String value)
+    {
+        int length = value.length();
+        int bytes = length;
+        for (int i = 0; i < length; ++i) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                continue;
+            }
+            if (c < 0x800) {
+                bytes += 1;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                bytes += 2; // 4 bytes for the pair
+                ++i;
+            } else if (Character.isSurrogate(c)) {
+                // unpaired: replaced by a single '?'
+            } else {
+                bytes += 2;
+            }
+        }
+        return bytes;
+    }
+
+    // Enum numbers in MediaContentHolder are the data.media ordinals
+    private static <E> E enumValue(E[] values, int number) throws InvalidProtocolBufferException
+    {
+        if (number < 0 || number >= values.length) {
+            throw new InvalidProtocolBufferException("Unknown enum value " + number + ".");
+        }
+        return values[number];
+    }
+
+    private static void skip(CodedInputStream in, int tag) throws IOException
+    {
+        if (!in.skipField(tag)) {
+            throw new InvalidProtocolBufferException("Unexpected end-group tag.");
+        }
+    }
+}
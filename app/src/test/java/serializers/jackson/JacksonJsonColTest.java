@@ -0,0 +1,81 @@
+package serializers.jackson;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import data.media.Image;
+import data.media.Media;
+import data.media.MediaContent;
+import data.media.Pod;
+import serializers.Serializer;
+import serializers.TestGroup;
+import serializers.TestGroups;
+
+import static org.junit.Assert.*;
+
+/**
+ * <code>json/jackson/manual-col</code> and <code>json/jackson/databind-col</code> share
+ * one format: same bytes for the same content, and each reads the other's output.
+ * The benchmark's round-trip check only ever feeds a codec its own output.
+ */
+public class JacksonJsonColTest {
+    @Test
+    public void manualColMatchesDatabindCol() throws Exception {
+        TestGroups groups = new TestGroups();
+        JacksonJsonManualCol.register(groups);
+        JacksonJsonDatabind.register(groups);
+        Serializer<Object> manual = serializer(groups, "json/jackson/manual-col");
+        Serializer<Object> databind = serializer(groups, "json/jackson/databind-col");
+
+        for (MediaContent content : Arrays.asList(content(true), content(false))) {
+            byte[] fromManual = manual.serialize(content);
+            byte[] fromDatabind = databind.serialize(content);
+            assertEquals(new String(fromDatabind, "UTF-8"), new String(fromManual, "UTF-8"));
+
+            Object expected = databind.deserialize(fromDatabind);
+            assertEquals(expected, manual.deserialize(fromDatabind));
+            assertEquals(expected, databind.deserialize(fromManual));
+            assertEquals(expected, manual.deserialize(fromManual));
+        }
+    }
+
+    @Test
+    public void databindColOrderIgnoresFieldOrder() throws Exception {
+        // dex sorts fields by name; sorting properties by name stands in for that here
+        ObjectMapper sorted = new ObjectMapper();
+        sorted.setAnnotationIntrospector(new AsArrayIntrospector());
+        sorted.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY, true);
+        TestGroups groups = new TestGroups();
+        JacksonJsonManualCol.register(groups);
+        Serializer<Object> manual = serializer(groups, "json/jackson/manual-col");
+
+        MediaContent content = content(true);
+        assertEquals(new String(manual.serialize(content), "UTF-8"), sorted.writeValueAsString(content));
+    }
+
+    private static MediaContent content(boolean hasBitrate) {
+        Media media = new Media("http://javaone.com/keynote.mpg", null, 640, 480, "video/mpg4",
+                18000000, 58982400, hasBitrate ? 262144 : 0, hasBitrate,
+                new ArrayList<String>(Arrays.asList("Bill Gates", "Steve Jobs")), Media.Player.JAVA, null,
+                new ArrayList<Pod>(Collections.singletonList(new Pod("root", new Pod("child", null)))));
+        return new MediaContent(media, new ArrayList<Image>(Arrays.asList(
+                new Image("http://javaone.com/keynote_large.jpg", "Javaone Keynote", 1024, 768, Image.Size.LARGE),
+                new Image("http://javaone.com/keynote_small.jpg", null, 320, 240, Image.Size.SMALL))));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Serializer<Object> serializer(TestGroups groups, String name) {
+        for (TestGroup.Entry<MediaContent,Object> entry : groups.media.entries) {
+            if (entry.serializer.getName().equals(name)) {
+                return (Serializer<Object>) (Serializer<?>) entry.serializer;
+            }
+        }
+        throw new IllegalArgumentException(name);
+    }
+}
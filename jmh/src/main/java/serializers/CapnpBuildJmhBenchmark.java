@@ -0,0 +1,73 @@
+package serializers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Builds the capnp media message from the POJOs and writes it into a reused buffer,
+ * which for <code>capnp/pooled</code> also returns its segments to the pool. Meant to
+ * be run with the GC profiler, whose <code>gc.alloc.rate.norm</code> is the bytes
+ * allocated per message:
+ * <code>JmhRunner -data=... CapnpBuildJmhBenchmark -prof gc</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpBuildJmhBenchmark
+{
+    @Param({"capnp", "capnp/pooled"})
+    public String format;
+
+    private Transformer<Object,Object> transformer;
+    private Serializer<Object> ser;
+    private Object value;
+
+    @State(Scope.Thread)
+    public static class Buffers
+    {
+        ByteBuffer out;
+
+        @Setup
+        public void setup(CapnpBuildJmhBenchmark benchmark) throws Exception
+        {
+            int size = benchmark.ser.serialize(benchmark.transformer.forward(benchmark.value)).length;
+            out = ByteBuffer.allocate(size);
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, format);
+        transformer = entry.transformer;
+        ser = entry.serializer;
+        value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+    }
+
+    @Benchmark
+    public ByteBuffer build(Buffers buffers) throws Exception
+    {
+        ByteBuffer out = buffers.out;
+        out.clear();
+        ser.serializeInto(transformer.forward(value), out);
+        return out;
+    }
+}
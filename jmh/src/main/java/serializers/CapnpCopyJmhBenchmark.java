@@ -0,0 +1,82 @@
+package serializers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.capnproto.MessageBuilder;
+import org.capnproto.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serializers.capnp.media.MediaContentHolder;
+
+/**
+ * Deep-copies the media message, read from a heap or a direct buffer, into a new
+ * <code>MessageBuilder</code>; the copy goes through <code>WireHelpers.copyPointer</code>
+ * and its bulk copy and zeroing. <code>forward</code> is the <code>capnp</code>
+ * transformer building the message from the POJOs, for comparison.
+ * Run with <code>JmhRunner -data=... CapnpCopyJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpCopyJmhBenchmark
+{
+    @Param({"heap", "direct"})
+    public String source;
+
+    private Transformer<Object,Object> transformer;
+    private Object value;
+    private ByteBuffer message;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, "capnp");
+        transformer = entry.transformer;
+        value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+
+        byte[] bytes = entry.serializer.serialize(transformer.forward(value));
+        ByteBuffer buffer;
+        if (source.equals("direct")) {
+            buffer = ByteBuffer.allocateDirect(bytes.length);
+            buffer.put(bytes);
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(bytes);
+        }
+        message = buffer;
+    }
+
+    @Benchmark
+    public MessageBuilder copy() throws Exception
+    {
+        // a fresh reader each time, as copying counts against its traversal limit
+        MediaContentHolder.MediaContent.Reader root =
+                Serialize.read(message.duplicate()).getRoot(MediaContentHolder.MediaContent.factory);
+        MessageBuilder builder = new MessageBuilder();
+        builder.setRoot(MediaContentHolder.MediaContent.factory, root);
+        return builder;
+    }
+
+    @Benchmark
+    public Object forward()
+    {
+        return transformer.forward(value);
+    }
+}
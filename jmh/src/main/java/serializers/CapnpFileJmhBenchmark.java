@@ -0,0 +1,107 @@
+package serializers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.TimeUnit;
+
+import org.capnproto.MessageReader;
+import org.capnproto.ReaderOptions;
+import org.capnproto.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serializers.capnp.media.MediaContentHolder;
+
+/**
+ * Opens a file of <code>messages</code> unpacked capnp media messages, back to back,
+ * and reads one field of each: once through <code>Serialize.read(ReadableByteChannel)</code>,
+ * which copies every message onto the heap, and once through <code>Serialize.readMapped</code>.
+ * Run with <code>JmhRunner -data=... CapnpFileJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpFileJmhBenchmark
+{
+    @Param({"100"})
+    public int messages;
+
+    private File file;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, "capnp");
+        Object value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+        byte[] message = entry.serializer.serialize(entry.transformer.forward(value));
+
+        file = File.createTempFile("media", ".capnp");
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            for (int i = 0; i < messages; ++i) {
+                out.write(message);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public long channelCopy() throws Exception
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            long sum = 0;
+            for (int i = 0; i < messages; ++i) {
+                sum += width(Serialize.read(channel, ReaderOptions.DEFAULT_READER_OPTIONS));
+            }
+            return sum;
+        } finally {
+            raf.close();
+        }
+    }
+
+    @Benchmark
+    public long mapped() throws Exception
+    {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            long sum = 0;
+            for (MessageReader reader : Serialize.readMapped(raf.getChannel(), ReaderOptions.DEFAULT_READER_OPTIONS)) {
+                sum += width(reader);
+            }
+            return sum;
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static int width(MessageReader reader)
+    {
+        return reader.getRoot(MediaContentHolder.MediaContent.factory).getMedia().getWidth();
+    }
+}
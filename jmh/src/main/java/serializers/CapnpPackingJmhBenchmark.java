@@ -0,0 +1,108 @@
+package serializers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Writes and reads the media message through the <code>capnp</code> and
+ * <code>capnp-packed</code> serializers, into and out of reused buffers.
+ * The <code>bytes</code> secondary result counts unpacked message bytes; with
+ * scores in operations per microsecond, it reads directly as MB/s. Unpacked
+ * <code>read</code> only wraps the buffer, so its figure is an upper bound.
+ * Run with <code>JmhRunner -data=... CapnpPackingJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpPackingJmhBenchmark
+{
+    @Param({"capnp", "capnp-packed"})
+    public String format;
+
+    private Serializer<Object> ser;
+    private Object message;
+    private int unpackedSize;
+    private ByteBuffer serialized;
+
+    @AuxCounters
+    @State(Scope.Thread)
+    public static class Bytes
+    {
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Buffers
+    {
+        ByteBuffer out;
+        ByteBuffer in;
+
+        @Setup
+        public void setup(CapnpPackingJmhBenchmark benchmark)
+        {
+            // packing can grow incompressible data by a byte per word
+            out = ByteBuffer.allocate(benchmark.unpackedSize + benchmark.unpackedSize / 8 + 64);
+            in = benchmark.serialized.duplicate();
+        }
+    }
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, format);
+        ser = entry.serializer;
+        Object value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+        message = entry.transformer.forward(value);
+
+        unpackedSize = JmhRunner.findEntry(group, "capnp").serializer.serialize(message).length;
+        serialized = ByteBuffer.wrap(ser.serialize(message));
+        if (!value.equals(entry.transformer.reverse(ser.deserialize(serialized.duplicate())))) {
+            throw new IllegalStateException("\"" + format + "\" failed round-trip check.");
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer write(Buffers buffers, Bytes bytes) throws Exception
+    {
+        ByteBuffer out = buffers.out;
+        out.clear();
+        ser.serializeInto(message, out);
+        bytes.bytes += unpackedSize;
+        return out;
+    }
+
+    @Benchmark
+    public Object read(Buffers buffers, Bytes bytes) throws Exception
+    {
+        ByteBuffer in = buffers.in;
+        in.rewind();
+        Object result = ser.deserialize(in);
+        bytes.bytes += unpackedSize;
+        return result;
+    }
+}
@@ -0,0 +1,137 @@
+package serializers;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.util.concurrent.TimeUnit;
+
+import org.capnproto.AnyPointer;
+import org.capnproto.Data;
+import org.capnproto.MessageBuilder;
+import org.capnproto.MessageReader;
+import org.capnproto.PrimitiveList;
+import org.capnproto.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Moves a list of <code>elements</code> longs, read from a heap or a direct buffer,
+ * between the message and a <code>long[]</code>, once per element through
+ * <code>get</code>/<code>set</code> and once through <code>getAll</code>/<code>setAll</code>;
+ * <code>dataLoop</code>/<code>dataGetAll</code> do the same for a <code>Data</code> blob of
+ * the same byte size. Run with <code>JmhRunner -data=... CapnpPrimitiveListJmhBenchmark</code>;
+ * the media data itself is not used.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpPrimitiveListJmhBenchmark
+{
+    @Param({"heap", "direct"})
+    public String source;
+
+    @Param({"65536"})
+    public int elements;
+
+    private PrimitiveList.Long.Reader longs;
+    private PrimitiveList.Long.Builder longsBuilder;
+    private Data.Reader data;
+    private long[] array;
+    private byte[] bytes;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        MessageBuilder builder = new MessageBuilder();
+        longsBuilder = builder.getRoot(AnyPointer.factory).initAs(PrimitiveList.Long.factory, elements);
+        for (int i = 0; i < elements; ++i) {
+            longsBuilder.set(i, i * 0x0101010101L);
+        }
+        longs = read(builder).getRoot(PrimitiveList.Long.factory);
+
+        MessageBuilder dataBuilder = new MessageBuilder();
+        Data.Builder blob = dataBuilder.getRoot(AnyPointer.factory).initAs(Data.factory, elements * 8);
+        for (int i = 0; i < blob.size; ++i) {
+            blob.buffer.put(blob.offset + i, (byte) i);
+        }
+        data = read(dataBuilder).getRoot(Data.factory);
+
+        array = new long[elements];
+        bytes = new byte[elements * 8];
+    }
+
+    private MessageReader read(MessageBuilder builder) throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Serialize.write(Channels.newChannel(out), builder);
+        ByteBuffer buffer;
+        if (source.equals("direct")) {
+            buffer = ByteBuffer.allocateDirect(out.size());
+            buffer.put(out.toByteArray());
+            buffer.flip();
+        } else {
+            buffer = ByteBuffer.wrap(out.toByteArray());
+        }
+        return Serialize.read(buffer);
+    }
+
+    @Benchmark
+    public long[] getLoop()
+    {
+        for (int i = 0; i < elements; ++i) {
+            array[i] = longs.get(i);
+        }
+        return array;
+    }
+
+    @Benchmark
+    public long[] getAll()
+    {
+        longs.getAll(array, 0);
+        return array;
+    }
+
+    @Benchmark
+    public Object setLoop()
+    {
+        for (int i = 0; i < elements; ++i) {
+            longsBuilder.set(i, array[i]);
+        }
+        return longsBuilder;
+    }
+
+    @Benchmark
+    public Object setAll()
+    {
+        longsBuilder.setAll(array, 0);
+        return longsBuilder;
+    }
+
+    @Benchmark
+    public byte[] dataLoop()
+    {
+        for (int i = 0; i < data.size; ++i) {
+            bytes[i] = data.buffer.get(data.offset + i);
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public byte[] dataGetAll()
+    {
+        data.getAll(bytes, 0);
+        return bytes;
+    }
+}
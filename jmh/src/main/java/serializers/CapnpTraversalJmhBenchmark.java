@@ -0,0 +1,101 @@
+package serializers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.capnproto.ReaderOptions;
+import org.capnproto.Serialize;
+import org.capnproto.StructList;
+import org.capnproto.Text;
+import org.capnproto.TextList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serializers.capnp.media.MediaContentHolder;
+
+/**
+ * Reads the capnp media message and visits every field of it, without decoding text,
+ * with the default <code>ReaderOptions</code> and with the trusted ones that skip
+ * traversal-limit accounting.
+ * Run with <code>JmhRunner -data=... CapnpTraversalJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class CapnpTraversalJmhBenchmark
+{
+    @Param({"default", "trusted"})
+    public String options;
+
+    private ReaderOptions readerOptions;
+    private ByteBuffer message;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, "capnp");
+        Object value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+        message = ByteBuffer.wrap(entry.serializer.serialize(entry.transformer.forward(value)));
+        readerOptions = options.equals("trusted")
+                ? ReaderOptions.TRUSTED_READER_OPTIONS : ReaderOptions.DEFAULT_READER_OPTIONS;
+    }
+
+    @Benchmark
+    public long traverse() throws Exception
+    {
+        MediaContentHolder.MediaContent.Reader root =
+                Serialize.read(message.duplicate(), readerOptions).getRoot(MediaContentHolder.MediaContent.factory);
+        long sum = media(root.getMedia());
+        StructList.Reader<MediaContentHolder.Image.Reader> images = root.getImage();
+        MediaContentHolder.Image.Reader image = null;
+        for (int i = 0; i < images.size(); i++) {
+            image = images.get(i, image);
+            sum += image.getUri().size() + image.getTitle().size()
+                    + image.getWidth() + image.getHeight() + image.getSize().ordinal();
+        }
+        return sum;
+    }
+
+    private static long media(MediaContentHolder.Media.Reader media)
+    {
+        long sum = media.getUri().size() + media.getTitle().size() + media.getFormat().size()
+                + media.getCopyright().size() + media.getWidth() + media.getHeight()
+                + media.getDuration() + media.getSize() + media.getBitrate() + media.getPlayer().ordinal();
+        TextList.Reader persons = media.getPerson();
+        Text.Cursor person = new Text.Cursor();
+        for (int i = 0; i < persons.size(); i++) {
+            sum += persons.get(i, person).size();
+        }
+        StructList.Reader<MediaContentHolder.Pod.Reader> pods = media.getPods();
+        MediaContentHolder.Pod.Reader pod = null;
+        for (int i = 0; i < pods.size(); i++) {
+            pod = pods.get(i, pod);
+            sum += pod(pod);
+        }
+        return sum;
+    }
+
+    private static long pod(MediaContentHolder.Pod.Reader pod)
+    {
+        long sum = pod.getMessage().size();
+        if (pod.hasPod()) {
+            sum += pod(pod.getPod());
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,127 @@
+package serializers;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.capnproto.BufferedOutputStreamWrapper;
+import org.capnproto.MessageBuilder;
+import org.capnproto.Serialize;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import serializers.capnp.Capnproto;
+import serializers.capnp.media.MediaContentHolder;
+
+/**
+ * Writes <code>messages</code> small capnp messages (the media part of the test data,
+ * about 2 KB each) to a local file through <code>Serialize.write</code>:
+ * <code>perSegment</code> hides the gathering interface of the file channel, so the
+ * table and each segment are written by separate calls; <code>gathering</code> passes the
+ * channel itself; <code>buffered</code> copies through a <code>BufferedOutputStreamWrapper</code>.
+ * Every invocation writes the whole file, so a default run writes some 2 GB per
+ * invocation; pass <code>-p messages=...</code> for smaller runs.
+ * Run with <code>JmhRunner -data=... CapnpWriteJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class CapnpWriteJmhBenchmark
+{
+    @Param({"1000000"})
+    public int messages;
+
+    private MessageBuilder message;
+    private File file;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, "capnp");
+        data.media.MediaContent value = (data.media.MediaContent) JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+        Capnproto.Message forwarded = (Capnproto.Message) entry.transformer.forward(
+                new data.media.MediaContent(value.media, Collections.<data.media.Image>emptyList()));
+        message = new MessageBuilder();
+        message.setRoot(MediaContentHolder.MediaContent.factory, forwarded.root());
+
+        file = File.createTempFile("media", ".capnp");
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        file.delete();
+    }
+
+    @Benchmark
+    public long perSegment() throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            final FileChannel channel = out.getChannel();
+            WritableByteChannel plain = new WritableByteChannel() {
+                public int write(ByteBuffer src) throws IOException { return channel.write(src); }
+                public boolean isOpen() { return channel.isOpen(); }
+                public void close() throws IOException { channel.close(); }
+            };
+            for (int i = 0; i < messages; ++i) {
+                Serialize.write(plain, message);
+            }
+            return channel.position();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public long gathering() throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            for (int i = 0; i < messages; ++i) {
+                Serialize.write(channel, message);
+            }
+            return channel.position();
+        } finally {
+            out.close();
+        }
+    }
+
+    @Benchmark
+    public long buffered() throws IOException
+    {
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            FileChannel channel = out.getChannel();
+            BufferedOutputStreamWrapper buffered = new BufferedOutputStreamWrapper(channel);
+            for (int i = 0; i < messages; ++i) {
+                Serialize.write(buffered, message);
+            }
+            buffered.flush();
+            return channel.position();
+        } finally {
+            out.close();
+        }
+    }
+}
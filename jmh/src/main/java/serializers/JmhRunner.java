@@ -0,0 +1,124 @@
+package serializers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Command-line entry point for the JMH benchmarks. Enumerates the serializers
+ * registered by {@link BenchmarkRunner} and hands them to JMH as values of the
+ * <code>serializer</code> parameter, so every <code>TestGroup.Entry</code> gets
+ * its own forked measurement.
+ *<p>
+ * Own options are <code>-data=file</code>, <code>-include=impl1,impl2,...</code>
+ * and <code>-hidden</code> (same meaning as for {@link BenchmarkBase});
+ * everything else is passed on to JMH.
+ */
+public class JmhRunner
+{
+    public static void main(String[] args) throws Exception
+    {
+        String dataFile = null;
+        String[] includes = null;
+        boolean enableHidden = false;
+        List<String> jmhArgs = new ArrayList<String>();
+
+        for (String arg : args) {
+            if (arg.startsWith("-data=")) {
+                dataFile = arg.substring("-data=".length());
+            } else if (arg.startsWith("-include=")) {
+                includes = arg.substring("-include=".length()).split(",");
+            } else if (arg.equals("-hidden")) {
+                enableHidden = true;
+            } else {
+                jmhArgs.add(arg);
+            }
+        }
+        if (dataFile == null) {
+            System.err.println("Usage: JmhRunner -data=<media.1.cks> [-include=impl1,...] [-hidden] [jmh options]");
+            System.exit(1);
+        }
+        File data = new File(dataFile).getAbsoluteFile();
+
+        List<String> names = new ArrayList<String>();
+        for (TestGroup.Entry<Object,Object> entry : mediaGroup().entries) {
+            String name = entry.serializer.getName();
+            if (!enableHidden && BenchmarkBase.HIDDEN.contains(name)) {
+                continue;
+            }
+            if (includes != null && !matchesAny(includes, name)) {
+                continue;
+            }
+            names.add(name);
+        }
+        if (names.isEmpty()) {
+            System.err.println("No serializer matches " + Arrays.toString(includes));
+            System.exit(1);
+        }
+
+        CommandLineOptions cmdOptions = new CommandLineOptions(jmhArgs.toArray(new String[jmhArgs.size()]));
+        ChainedOptionsBuilder builder = new OptionsBuilder()
+                .parent(cmdOptions)
+                .param("serializer", names.toArray(new String[names.size()]))
+                .jvmArgsAppend("-D" + MediaItemJmhBenchmark.DATA_FILE_PROPERTY + "=" + data.getPath());
+        // benchmark regexps given on the command line win over the default
+        if (cmdOptions.getIncludes().isEmpty()) {
+            builder.include(MediaItemJmhBenchmark.class.getSimpleName());
+        }
+        new Runner(builder.build()).run();
+    }
+
+    // ------------------------------------------------------------------------------------
+    // Helpers shared with the benchmark classes (which run in forked VMs)
+    // ------------------------------------------------------------------------------------
+
+    @SuppressWarnings("unchecked")
+    static TestGroup<Object> mediaGroup()
+    {
+        TestGroups groups = new TestGroups();
+        new BenchmarkRunner().addTests(groups);
+        return (TestGroup<Object>) (TestGroup<?>) groups.media;
+    }
+
+    static TestGroup.Entry<Object,Object> findEntry(TestGroup<Object> group, String name)
+    {
+        for (TestGroup.Entry<Object,Object> entry : group.entries) {
+            if (entry.serializer.getName().equals(name)) {
+                return entry;
+            }
+        }
+        throw new IllegalArgumentException("No serializer named \"" + name + "\"");
+    }
+
+    /**
+     * Loads the test file through the serializer registered for its extension,
+     * the way {@link MediaItemBenchmark} does on the device.
+     */
+    static Object loadTestData(TestGroup<Object> group, File file) throws Exception
+    {
+        String fileName = file.getName();
+        String extension = fileName.substring(fileName.lastIndexOf('.') + 1);
+        TestGroup.Entry<Object,Object> loader = group.extensionMap.get(extension);
+        if (loader == null) {
+            throw new IllegalArgumentException("No deserializer registered for file extension \"." + extension + "\"");
+        }
+        byte[] data = BenchmarkBase.readFile(file);
+        return loader.transformer.reverse(loader.serializer.deserialize(data));
+    }
+
+    private static boolean matchesAny(String[] patterns, String name)
+    {
+        for (String pattern : patterns) {
+            if (BenchmarkBase.match(pattern, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,97 @@
+package serializers;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Deserializes the media message with <code>json/jackson/manual</code> from JSON written
+ * in the codec's own field order, which its fast path expects, and from the same JSON
+ * with the fields of every object shuffled, which sends each object through the
+ * field-name lookup in the fallback loop. The shuffle uses a fixed seed, so runs see
+ * the same document.
+ * Run with <code>JmhRunner -data=... JsonFieldOrderJmhBenchmark</code>.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class JsonFieldOrderJmhBenchmark
+{
+    @Param({"ordered", "shuffled"})
+    public String order;
+
+    private Serializer<Object> ser;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, "json/jackson/manual");
+        ser = entry.serializer;
+        Object value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+        serialized = ser.serialize(entry.transformer.forward(value));
+        if (order.equals("shuffled")) {
+            ObjectMapper mapper = new ObjectMapper();
+            serialized = mapper.writeValueAsBytes(shuffle(mapper.readTree(serialized), new Random(1)));
+        }
+        if (!value.equals(entry.transformer.reverse(ser.deserialize(serialized)))) {
+            throw new IllegalStateException("\"" + order + "\" input failed round-trip check.");
+        }
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception
+    {
+        return ser.deserialize(serialized);
+    }
+
+    private static JsonNode shuffle(JsonNode node, Random random)
+    {
+        if (node.isObject()) {
+            List<Map.Entry<String,JsonNode>> fields = new ArrayList<Map.Entry<String,JsonNode>>();
+            for (Iterator<Map.Entry<String,JsonNode>> it = node.fields(); it.hasNext(); ) {
+                fields.add(it.next());
+            }
+            Collections.shuffle(fields, random);
+            ObjectNode shuffled = ((ObjectNode) node).objectNode();
+            for (Map.Entry<String,JsonNode> field : fields) {
+                shuffled.set(field.getKey(), shuffle(field.getValue(), random));
+            }
+            return shuffled;
+        }
+        if (node.isArray()) {
+            ArrayNode array = (ArrayNode) node;
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, shuffle(array.get(i), random));
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,120 @@
+package serializers;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH version of the <code>Create</code>/<code>Serialize</code>/<code>Deserialize</code>
+ * test cases in {@link MediaItemBenchmark}, run once per registered serializer.
+ * The <code>serializer</code> parameter is filled in by {@link JmhRunner} from
+ * the entries of <code>TestGroups.media</code>.
+ *<p>
+ * <code>serializeBuffer</code>/<code>deserializeBuffer</code> measure the same work through
+ * the {@link java.nio.ByteBuffer} methods of {@link Serializer}, with a buffer reused
+ * between invocations; serializers without a native implementation pay for a copy there.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 10, time = 1, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class MediaItemJmhBenchmark
+{
+    public static final String DATA_FILE_PROPERTY = "media.file";
+
+    @Param({})
+    public String serializer;
+
+    private Transformer<Object,Object> transformer;
+    private Serializer<Object> ser;
+    private Object value;
+    private byte[] serialized;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, serializer);
+        transformer = entry.transformer;
+        ser = entry.serializer;
+        value = JmhRunner.loadTestData(group, new File(System.getProperty(DATA_FILE_PROPERTY)));
+
+        // same check BenchmarkBase does before measuring anything
+        serialized = ser.serialize(transformer.forward(value));
+        Object roundTrip = transformer.reverse(ser.deserialize(serialized));
+        if (!value.equals(roundTrip)) {
+            throw new IllegalStateException("\"" + serializer + "\" failed round-trip check.");
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(Math.max(serialized.length * 2, Serializer.BUFFER_SIZE));
+        ser.serializeInto(transformer.forward(value), buffer);
+        buffer.flip();
+        roundTrip = transformer.reverse(ser.deserialize(buffer));
+        if (!value.equals(roundTrip)) {
+            throw new IllegalStateException("\"" + serializer + "\" failed ByteBuffer round-trip check.");
+        }
+    }
+
+    @Benchmark
+    public Object create()
+    {
+        return transformer.forward(value);
+    }
+
+    // Like MediaItemBenchmark.Serialize, includes the forward transformation
+    @Benchmark
+    public byte[] serialize() throws Exception
+    {
+        return ser.serialize(transformer.forward(value));
+    }
+
+    @Benchmark
+    public Object deserialize() throws Exception
+    {
+        return transformer.reverse(ser.deserialize(serialized));
+    }
+
+    @State(Scope.Thread)
+    public static class Buffers
+    {
+        ByteBuffer out;
+        ByteBuffer in;
+
+        @Setup
+        public void setup(MediaItemJmhBenchmark benchmark)
+        {
+            out = ByteBuffer.allocate(Math.max(benchmark.serialized.length * 2, Serializer.BUFFER_SIZE));
+            in = ByteBuffer.wrap(benchmark.serialized);
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer serializeBuffer(Buffers buffers) throws Exception
+    {
+        ByteBuffer out = buffers.out;
+        out.clear();
+        ser.serializeInto(transformer.forward(value), out);
+        return out;
+    }
+
+    @Benchmark
+    public Object deserializeBuffer(Buffers buffers) throws Exception
+    {
+        ByteBuffer in = buffers.in;
+        in.rewind();
+        return transformer.reverse(ser.deserialize(in));
+    }
+}
@@ -0,0 +1,63 @@
+package serializers;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First use of a protobuf serializer in a fresh JVM: one forward, serialize,
+ * deserialize and reverse of the media message, including loading and initializing
+ * the classes involved. For <code>protobuf</code> that means the generated
+ * <code>MediaContentHolder</code> and its descriptors; <code>protobuf/lite</code> loads
+ * the <code>GeneratedMessageLite</code> classes of <code>MediaContentLiteHolder</code>,
+ * without descriptors; <code>protobuf/manual</code> only needs
+ * <code>CodedInputStream</code>/<code>CodedOutputStream</code>. Steady-state numbers for
+ * the same entries come from {@link MediaItemJmhBenchmark}.
+ * Run with <code>JmhRunner -data=... -include=protobuf,protobuf/lite,protobuf/manual
+ * ProtobufStartupJmhBenchmark</code>; without <code>-include</code> JmhRunner runs it
+ * for every registered serializer.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(20)
+public class ProtobufStartupJmhBenchmark
+{
+    @Param({"protobuf", "protobuf/lite", "protobuf/manual"})
+    public String serializer;
+
+    private Transformer<Object,Object> transformer;
+    private Serializer<Object> ser;
+    private Object value;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        // registering the entries does not touch the message classes yet
+        TestGroup<Object> group = JmhRunner.mediaGroup();
+        TestGroup.Entry<Object,Object> entry = JmhRunner.findEntry(group, serializer);
+        transformer = entry.transformer;
+        ser = entry.serializer;
+        value = JmhRunner.loadTestData(group,
+                new File(System.getProperty(MediaItemJmhBenchmark.DATA_FILE_PROPERTY)));
+    }
+
+    @Benchmark
+    public Object firstUse() throws Exception
+    {
+        return transformer.reverse(ser.deserialize(ser.serialize(transformer.forward(value))));
+    }
+}